@@ -0,0 +1,124 @@
+package benchmark;
+
+import fft.AngularSpectrumMethod;
+import fft.AngularSpectrumPropagator;
+import fft.ComplexBuffer;
+import fft.Precision;
+import fft.PropagationGeometry;
+import fft.PropagationWorkspace;
+import fft.TransferFunctionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One monochromatic propagation of the triangle mask, at the geometry Main uses.
+ * <p>
+ * With transferCache false the shared {@link TransferFunctionCache} is cleared
+ * before each operation, so the transfer function is evaluated every time as in
+ * a sweep that does not repeat wavelengths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class AngularSpectrumBenchmark {
+    private static final double WAVELENGTH = 550e-9;
+    private static final double EXTENT = 5.6e-3;
+    private static final double DISTANCE = 0.8;
+
+    @Param({"256", "512", "1024"})
+    public int resolution;
+
+    @Param({"DOUBLE", "FLOAT"})
+    public Precision precision;
+
+    /**
+     * false: real mask, half-spectrum path; true: with a phase mask, complex path
+     */
+    @Param({"false", "true"})
+    public boolean phase;
+
+    @Param({"true", "false"})
+    public boolean transferCache;
+
+    double[] amplitudeMask;
+    double[] phaseMask;
+    double[] incidentIntensity;
+    AngularSpectrumPropagator propagator;
+    PropagationWorkspace workspace;
+    double[] modulus;
+
+    @Setup
+    public void setup() {
+        final int numPoints = resolution * resolution;
+        amplitudeMask = Data.triangleMask(resolution);
+        phaseMask = phase ? Data.random(numPoints, 3) : null;
+        incidentIntensity = new double[numPoints];
+        java.util.Arrays.fill(incidentIntensity, 1.0);
+        propagator = AngularSpectrumPropagator.forMask(
+                amplitudeMask,
+                new PropagationGeometry(EXTENT, EXTENT, resolution, resolution)
+        );
+        workspace = propagator.newWorkspace();
+        modulus = new double[numPoints];
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if (!transferCache) TransferFunctionCache.shared().clear();
+    }
+
+    /**
+     * The observed field in the benchmark's precision, a ComplexBuffer or a
+     * FloatComplexBuffer
+     */
+    @Benchmark
+    public Object process() {
+        return switch (precision) {
+            case DOUBLE -> AngularSpectrumMethod.processBuffer(
+                    WAVELENGTH,
+                    EXTENT, EXTENT,
+                    DISTANCE,
+                    resolution, resolution,
+                    amplitudeMask,
+                    phaseMask,
+                    incidentIntensity
+            );
+            case FLOAT -> AngularSpectrumMethod.processFloat(
+                    WAVELENGTH,
+                    EXTENT, EXTENT,
+                    DISTANCE,
+                    resolution, resolution,
+                    amplitudeMask,
+                    phaseMask,
+                    incidentIntensity
+            );
+        };
+    }
+
+    /**
+     * The per-wavelength step of a sweep: mask spectrum already computed
+     */
+    @Benchmark
+    public ComplexBuffer propagate() {
+        return propagator.propagate(WAVELENGTH, DISTANCE, 1.0);
+    }
+
+    /**
+     * The per-wavelength step of {@link simulation.PolychromaticSimulation}:
+     * straight to |U| in a pooled workspace, allocating nothing
+     */
+    @Benchmark
+    public double[] propagateModulus() {
+        propagator.propagateModulus(WAVELENGTH, DISTANCE, 1.0, workspace, modulus);
+        return modulus;
+    }
+}
@@ -0,0 +1,90 @@
+package benchmark;
+
+import color.CIE;
+import color.PolychromaticLight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Color;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CIEBenchmark {
+    @Param({"41", "401"})
+    public int wavelengths;
+
+    /**
+     * points converted by the batch benchmarks
+     */
+    @Param({"65536"})
+    public int points;
+
+    CIE cie;
+    List<Double> wavelengthList;
+    List<Double> intensityList;
+    double[][] spectra;
+    double[] wavelengthArray;
+    double[] x;
+    double[] y;
+    double[] z;
+    int[] argb;
+
+    @Setup
+    public void setup() throws FileNotFoundException {
+        cie = Data.cie();
+        final List<PolychromaticLight.WavelengthWithIntensity> light = Data.light(wavelengths);
+        wavelengthList = new ArrayList<>(wavelengths);
+        intensityList = new ArrayList<>(wavelengths);
+        wavelengthArray = new double[wavelengths];
+        for (int i = 0; i < wavelengths; i++) {
+            wavelengthList.add(light.get(i).wavelength());
+            intensityList.add(light.get(i).intensity());
+            wavelengthArray[i] = light.get(i).wavelength();
+        }
+
+        spectra = new double[wavelengths][];
+        for (int i = 0; i < wavelengths; i++)
+            spectra[i] = Data.random(points, i);
+        x = Data.random(points, 1);
+        y = Data.random(points, 2);
+        z = Data.random(points, 3);
+        argb = new int[points];
+    }
+
+    /**
+     * One point, boxed lists, allocating a stimulus per wavelength
+     */
+    @Benchmark
+    public Color calculateColor() {
+        return cie.calculateColor(wavelengthList, intensityList, 3.0);
+    }
+
+    /**
+     * Every point at once from per-wavelength planes
+     */
+    @Benchmark
+    public int[] toSRGB() {
+        cie.toSRGB(spectra, wavelengthArray, 3.0, argb);
+        return argb;
+    }
+
+    /**
+     * Final XYZ to sRGB step of the pipeline
+     */
+    @Benchmark
+    public int[] toARGB() {
+        cie.toARGB(x, y, z, argb);
+        return argb;
+    }
+}
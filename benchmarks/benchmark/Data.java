@@ -0,0 +1,64 @@
+package benchmark;
+
+import color.CIE;
+import color.PolychromaticLight;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks. Data files are read from the directory in
+ * the zrachok.root system property (set by the jmh task), or the working directory.
+ */
+final class Data {
+    private Data() {
+    }
+
+    static File file(String name) {
+        return new File(System.getProperty("zrachok.root", "."), name);
+    }
+
+    static CIE cie() throws FileNotFoundException {
+        return CIE.parseColorData(file("cie-cmf.txt"));
+    }
+
+    /**
+     * D65 reduced to count wavelengths spread evenly over the whole table
+     */
+    static List<PolychromaticLight.WavelengthWithIntensity> light(int count) throws FileNotFoundException {
+        final List<PolychromaticLight.WavelengthWithIntensity> all =
+                PolychromaticLight.parsePolychromaticData(file("illuminant_d65.txt")).lightData;
+        if (count <= 0 || count > all.size())
+            throw new IllegalArgumentException("Between 1 and " + all.size() + " wavelengths");
+
+        final List<PolychromaticLight.WavelengthWithIntensity> light = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            light.add(all.get(count == 1 ? 0 : (int) ((long) i * (all.size() - 1) / (count - 1))));
+        return light;
+    }
+
+    /**
+     * Opaque square mask with a centered triangular aperture, like triangle_256.png
+     * but at any resolution
+     */
+    static double[] triangleMask(int resolution) {
+        final double[] mask = new double[resolution * resolution];
+        for (int y = resolution / 4; y < 3 * resolution / 4; y++) {
+            final int halfWidth = (y - resolution / 4) / 2;
+            for (int x = resolution / 2 - halfWidth; x <= resolution / 2 + halfWidth; x++)
+                mask[y * resolution + x] = 1.0;
+        }
+        return mask;
+    }
+
+    static double[] random(int length, long seed) {
+        final Random random = new Random(seed);
+        final double[] values = new double[length];
+        for (int i = 0; i < length; i++)
+            values[i] = random.nextDouble();
+        return values;
+    }
+}
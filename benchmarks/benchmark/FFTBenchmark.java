@@ -0,0 +1,115 @@
+package benchmark;
+
+import fft.ComplexBuffer;
+import fft.FFT;
+import fft.FFTPlan2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transforms are in place, so every operation first restores the input;
+ * repeating a transform on its own output would overflow (or, inverted,
+ * underflow into subnormals). The copy is linear and small next to the transform.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FFTBenchmark {
+    @State(Scope.Thread)
+    public static class Line {
+        /**
+         * powers of two, a 2/3/5/7-smooth length and a prime (Bluestein)
+         */
+        @Param({"256", "1000", "1024", "4096", "4099"})
+        public int length;
+
+        ComplexBuffer input;
+        ComplexBuffer data;
+
+        @Setup
+        public void setup() {
+            input = new ComplexBuffer(Data.random(length, 1), Data.random(length, 2));
+            data = new ComplexBuffer(length);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Grid {
+        @Param({"128", "256", "480", "512", "1024"})
+        public int resolution;
+
+        ComplexBuffer input;
+        ComplexBuffer data;
+        ComplexBuffer transposed;
+        FFTPlan2D serial;
+        FFTPlan2D parallel;
+
+        @Setup
+        public void setup() {
+            final int numPoints = resolution * resolution;
+            input = new ComplexBuffer(Data.random(numPoints, 1), Data.random(numPoints, 2));
+            data = new ComplexBuffer(numPoints);
+            transposed = new ComplexBuffer(numPoints);
+            serial = FFTPlan2D.of(resolution, resolution);
+            parallel = FFTPlan2D.parallel(resolution, resolution);
+        }
+
+        void reset() {
+            System.arraycopy(input.real, 0, data.real, 0, input.length());
+            System.arraycopy(input.imaginary, 0, data.imaginary, 0, input.length());
+        }
+    }
+
+    @Benchmark
+    public ComplexBuffer fft(Line line) {
+        System.arraycopy(line.input.real, 0, line.data.real, 0, line.length);
+        System.arraycopy(line.input.imaginary, 0, line.data.imaginary, 0, line.length);
+        FFT.fft(line.data);
+        return line.data;
+    }
+
+    @Benchmark
+    public ComplexBuffer fft2D(Grid grid) {
+        grid.reset();
+        FFT.fft2D(grid.data, grid.serial);
+        return grid.data;
+    }
+
+    @Benchmark
+    public ComplexBuffer fft2DParallel(Grid grid) {
+        grid.reset();
+        FFT.fft2D(grid.data, grid.parallel);
+        return grid.data;
+    }
+
+    @Benchmark
+    public ComplexBuffer fft2DTransposed(Grid grid) {
+        grid.reset();
+        FFT.fft2DTransposed(grid.data, grid.transposed, grid.parallel);
+        return grid.transposed;
+    }
+
+    @Benchmark
+    public ComplexBuffer ifft2D(Grid grid) {
+        grid.reset();
+        FFT.ifft2D(grid.data, grid.parallel);
+        return grid.data;
+    }
+
+    /**
+     * shifts forwards then back, so the buffer is unchanged between operations
+     */
+    @Benchmark
+    public ComplexBuffer shiftCenter(Grid grid) {
+        FFT.shiftCenter(grid.data, grid.parallel);
+        FFT.unshiftCenter(grid.data, grid.parallel);
+        return grid.data;
+    }
+}
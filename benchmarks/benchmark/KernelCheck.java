@@ -0,0 +1,147 @@
+package benchmark;
+
+import fft.ComplexBuffer;
+import fft.FFTPlan;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Transforms random lines of power-of-two lengths with the {@link FFTPlan.Kernel#RADIX_4}
+ * and {@link FFTPlan.Kernel#RADIX_2} kernels and prints how far apart they are,
+ * how far the radix-4 result is from a direct DFT, and how long each kernel took.
+ * Both exponent signs are checked, and a strided line at an offset as the column
+ * passes use it.
+ * <p>
+ * Not a JMH benchmark but a plain program, run from the jmh jar with e.g.
+ * java --enable-preview --add-modules jdk.incubator.vector
+ * -cp build/libs/Zrachok-jmh.jar benchmark.KernelCheck [length ...],
+ * powers of two from 2 to 4096 by default.
+ */
+public final class KernelCheck {
+    /**
+     * Longest length also compared against a direct O(n^2) DFT
+     */
+    private static final int MAX_DIRECT_LENGTH = 1024;
+    private static final int STRIDE = 3;
+    private static final int OFFSET = 5;
+    private static final long TIMING_NANOS = 200_000_000L;
+
+    private KernelCheck() {
+    }
+
+    public static void main(String[] args) {
+        final int[] lengths = args.length == 0
+                ? IntStream.range(1, 13).map(power -> 1 << power).toArray()
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        for (int length : lengths) {
+            final FFTPlan radix4 = FFTPlan.of(length, FFTPlan.Kernel.RADIX_4);
+            final FFTPlan radix2 = FFTPlan.of(length, FFTPlan.Kernel.RADIX_2);
+            final Random random = new Random(length);
+            final ComplexBuffer line = new ComplexBuffer(OFFSET + STRIDE * length);
+            for (int i = 0; i < line.length(); i++) {
+                line.real[i] = random.nextGaussian();
+                line.imaginary[i] = random.nextGaussian();
+            }
+
+            double kernelError = 0.0;
+            double directError = 0.0;
+            for (double sign : new double[]{-1.0, 1.0})
+                for (int stride : new int[]{1, STRIDE}) {
+                    final int offset = stride == 1 ? 0 : OFFSET;
+                    final ComplexBuffer expected = transformed(radix2, line, offset, stride, sign);
+                    final ComplexBuffer actual = transformed(radix4, line, offset, stride, sign);
+                    kernelError = Math.max(kernelError, relativeError(actual, expected, offset, stride, length));
+
+                    if (length <= MAX_DIRECT_LENGTH) {
+                        final ComplexBuffer direct = direct(line, offset, stride, length, sign);
+                        directError = Math.max(directError, relativeError(actual, direct, offset, stride, length));
+                    }
+                }
+
+            System.out.printf(
+                    "%d: radix-4 vs radix-2 %.3e, vs direct %s, radix-2 %.3f us, radix-4 %.3f us%n",
+                    length,
+                    kernelError,
+                    length <= MAX_DIRECT_LENGTH ? String.format("%.3e", directError) : "skipped",
+                    nanosPerTransform(radix2, line) / 1_000.0,
+                    nanosPerTransform(radix4, line) / 1_000.0
+            );
+        }
+    }
+
+    private static ComplexBuffer transformed(FFTPlan plan, ComplexBuffer line, int offset, int stride, double sign) {
+        final ComplexBuffer copy = new ComplexBuffer(line.length());
+        System.arraycopy(line.real, 0, copy.real, 0, line.length());
+        System.arraycopy(line.imaginary, 0, copy.imaginary, 0, line.length());
+        plan.transform(copy.real, copy.imaginary, offset, stride, sign);
+        return copy;
+    }
+
+    /**
+     * c_k = sum_j y_j e^(sign 2 pi i j k / n), laid out like line
+     */
+    private static ComplexBuffer direct(ComplexBuffer line, int offset, int stride, int length, double sign) {
+        final ComplexBuffer result = new ComplexBuffer(line.length());
+        for (int k = 0; k < length; k++) {
+            double sumReal = 0.0;
+            double sumImaginary = 0.0;
+            for (int j = 0; j < length; j++) {
+                final double angle = sign * 2.0 * Math.PI * ((long) j * k % length) / length;
+                final double cos = Math.cos(angle);
+                final double sin = Math.sin(angle);
+                final double valueReal = line.real[offset + stride * j];
+                final double valueImaginary = line.imaginary[offset + stride * j];
+                sumReal += valueReal * cos - valueImaginary * sin;
+                sumImaginary += valueReal * sin + valueImaginary * cos;
+            }
+            result.real[offset + stride * k] = sumReal;
+            result.imaginary[offset + stride * k] = sumImaginary;
+        }
+        return result;
+    }
+
+    /**
+     * max |actual - expected| / max |expected| over the line's values
+     */
+    private static double relativeError(
+            ComplexBuffer actual, ComplexBuffer expected,
+            int offset, int stride, int length
+    ) {
+        double maxError = 0.0;
+        double maxValue = 0.0;
+        for (int k = 0; k < length; k++) {
+            final int index = offset + stride * k;
+            maxError = Math.max(maxError, Math.hypot(
+                    actual.real[index] - expected.real[index],
+                    actual.imaginary[index] - expected.imaginary[index]
+            ));
+            maxValue = Math.max(maxValue, expected.modulus(index));
+        }
+        return maxError / maxValue;
+    }
+
+    /**
+     * Contiguous forward transforms of a fresh copy of line, back to back for
+     * about TIMING_NANOS after a warm-up as long; the copy is included
+     */
+    private static double nanosPerTransform(FFTPlan plan, ComplexBuffer line) {
+        final ComplexBuffer work = new ComplexBuffer(plan.length);
+        for (int round = 0; ; round++) {
+            long count = 0;
+            final long start = System.nanoTime();
+            long elapsed;
+            do {
+                System.arraycopy(line.real, 0, work.real, 0, plan.length);
+                System.arraycopy(line.imaginary, 0, work.imaginary, 0, plan.length);
+                plan.transform(work.real, work.imaginary, 0, 1, -1.0);
+                count++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < TIMING_NANOS);
+
+            if (round == 1) return (double) elapsed / count;
+        }
+    }
+}
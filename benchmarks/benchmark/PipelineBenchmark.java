@@ -0,0 +1,84 @@
+package benchmark;
+
+import color.CIE;
+import color.PolychromaticLight;
+import fft.AngularSpectrumPropagator;
+import fft.PropagationGeometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import simulation.PolychromaticSimulation;
+import simulation.XYZAccumulator;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What Main does after reading the mask: mask spectrum, polychromatic sweep into
+ * XYZ planes, conversion to sRGB. Image I/O is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final double EXTENT = 5.6e-3;
+    private static final double DISTANCE = 0.8;
+    private static final double REFLECTANCE = 3.0;
+
+    @Param({"128", "256", "512"})
+    public int resolution;
+
+    @Param({"41", "401"})
+    public int wavelengths;
+
+    CIE cie;
+    List<PolychromaticLight.WavelengthWithIntensity> light;
+    double[] mask;
+    ExecutorService executor;
+    int threads;
+
+    @Setup
+    public void setup() throws FileNotFoundException {
+        cie = Data.cie();
+        light = Data.light(wavelengths);
+        mask = Data.triangleMask(resolution);
+        threads = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int[] polychromatic() {
+        final AngularSpectrumPropagator propagator = AngularSpectrumPropagator.forMask(
+                mask,
+                new PropagationGeometry(EXTENT, EXTENT, resolution, resolution)
+        );
+        final XYZAccumulator accumulator = new XYZAccumulator(cie, resolution * resolution, REFLECTANCE);
+        new PolychromaticSimulation(propagator, DISTANCE, executor, 2 * threads)
+                .run(light, accumulator, (finished, total) -> {
+                });
+
+        final int[] argb = new int[resolution * resolution];
+        accumulator.toARGB(argb);
+        return argb;
+    }
+}
@@ -0,0 +1,120 @@
+package benchmark;
+
+import fft.AngularSpectrumMethod;
+import fft.ComplexBuffer;
+import fft.FloatComplexBuffer;
+import fft.Precision;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Propagates a random aperture, once with a random phase screen and once
+ * without, in both {@link Precision}s and prints how far the float field is
+ * from the double one, and how long each took. The float field is widened for
+ * the comparison only, outside the timing.
+ * <p>
+ * Not a JMH benchmark but a plain program, run from the jmh jar with e.g.
+ * java --enable-preview --add-modules jdk.incubator.vector
+ * -cp build/libs/Zrachok-jmh.jar benchmark.PrecisionCheck [resolution ...],
+ * 256, 1024 and 2048 by default.
+ */
+public final class PrecisionCheck {
+    private static final double WAVELENGTH = 550e-9;
+    private static final double EXTENT = 1e-3;
+    private static final double DISTANCE = 0.05;
+    private static final int REPETITIONS = 5;
+
+    private PrecisionCheck() {
+    }
+
+    public static void main(String[] args) {
+        final int[] resolutions = args.length == 0
+                ? new int[]{256, 1024, 2048}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        for (int resolution : resolutions) {
+            final int numPoints = resolution * resolution;
+            final Random random = new Random(resolution);
+            final double[] amplitudeMask = new double[numPoints];
+            final double[] phaseMask = new double[numPoints];
+            final double[] incidentIntensity = new double[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                amplitudeMask[i] = random.nextBoolean() ? 1.0 : 0.0;
+                phaseMask[i] = 2.0 * Math.PI * random.nextDouble();
+                incidentIntensity[i] = 1.0;
+            }
+
+            check(resolution, "phase mask", amplitudeMask, phaseMask, incidentIntensity);
+            check(resolution, "real mask", amplitudeMask, null, incidentIntensity);
+        }
+    }
+
+    private static void check(
+            int resolution, String name,
+            double[] amplitudeMask, double[] phaseMask, double[] incidentIntensity
+    ) {
+        ComplexBuffer reference = null;
+        FloatComplexBuffer approximation = null;
+        long doubleNanos = Long.MAX_VALUE;
+        long floatNanos = Long.MAX_VALUE;
+        for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+            long start = System.nanoTime();
+            reference = AngularSpectrumMethod.processBuffer(
+                    WAVELENGTH, EXTENT, EXTENT, DISTANCE,
+                    resolution, resolution, amplitudeMask, phaseMask, incidentIntensity
+            );
+            doubleNanos = Math.min(doubleNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            approximation = AngularSpectrumMethod.processFloat(
+                    WAVELENGTH, EXTENT, EXTENT, DISTANCE,
+                    resolution, resolution, amplitudeMask, phaseMask, incidentIntensity
+            );
+            floatNanos = Math.min(floatNanos, System.nanoTime() - start);
+        }
+
+        final ComplexBuffer widened = approximation.toDouble();
+        System.out.printf(
+                "%dx%d %s: relative error %.3e, max |error| / max |U| %.3e, double %.1f ms, float %.1f ms%n",
+                resolution, resolution, name,
+                relativeError(reference, widened),
+                maxError(reference, widened),
+                doubleNanos / 1e6, floatNanos / 1e6
+        );
+    }
+
+    /**
+     * ||approximation - reference|| / ||reference||, in the 2-norm over all points
+     */
+    public static double relativeError(ComplexBuffer reference, ComplexBuffer approximation) {
+        if (reference.length() != approximation.length()) throw new IllegalArgumentException();
+
+        double error = 0.0;
+        double norm = 0.0;
+        for (int i = 0; i < reference.length(); i++) {
+            final double differenceReal = approximation.real[i] - reference.real[i];
+            final double differenceImaginary = approximation.imaginary[i] - reference.imaginary[i];
+            error += differenceReal * differenceReal + differenceImaginary * differenceImaginary;
+            norm += reference.real[i] * reference.real[i] + reference.imaginary[i] * reference.imaginary[i];
+        }
+        return Math.sqrt(error / norm);
+    }
+
+    /**
+     * Largest pointwise |approximation - reference|, relative to the largest |reference|
+     */
+    public static double maxError(ComplexBuffer reference, ComplexBuffer approximation) {
+        if (reference.length() != approximation.length()) throw new IllegalArgumentException();
+
+        double error = 0.0;
+        double magnitude = 0.0;
+        for (int i = 0; i < reference.length(); i++) {
+            final double differenceReal = approximation.real[i] - reference.real[i];
+            final double differenceImaginary = approximation.imaginary[i] - reference.imaginary[i];
+            error = Math.max(error, Math.hypot(differenceReal, differenceImaginary));
+            magnitude = Math.max(magnitude, reference.modulus(i));
+        }
+        return error / magnitude;
+    }
+}
@@ -1,132 +1,326 @@
+import batch.BatchJob;
+import batch.BatchRunner;
+import batch.JobManifest;
 import color.CIE;
 import color.PolychromaticLight;
-import fft.AngularSpectrumMethod;
+import fft.AngularSpectrumPropagator;
+import fft.ObservationWindow;
+import fft.PropagationGeometry;
+import image.MaskLoader;
+import image.PFMWriter;
+import metrics.Metrics;
+import metrics.Stage;
+import simulation.AdaptiveSpectralSampler;
+import simulation.PolychromaticSimulation;
+import simulation.SpectralCube;
+import simulation.SpectralCubeWriter;
+import simulation.XYZAccumulator;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Main {
+    private static final double REFLECTANCE = 3.0;
+    private static final Path METRICS_PATH = Path.of("metrics.json");
+    private static final int ADAPTIVE_INITIAL_SAMPLES = 9;
+    private static final double ADAPTIVE_TOLERANCE = 2.0;
+
+    /**
+     * With no arguments, runs the simulation. With one argument, also saves the
+     * sweep to that spectral cube file. With "render cube image", re-renders a
+     * saved cube into image without propagating. With "adaptive [tolerance]",
+     * samples the spectrum adaptively instead of propagating every wavelength
+     * (see {@link AdaptiveSpectralSampler}), to a colour tolerance in delta E.
+     * With "zoom minX minY maxX maxY pixels", renders only that rectangle of the
+     * screen, in metres, pixels across (see {@link ObservationWindow}). With
+     * "batch manifest", runs every job the manifest lists (see {@link JobManifest})
+     * in this one process. With "frames directory", also keeps every wavelength's
+     * intensities and writes each to directory as a gray PFM named after its
+     * wavelength.
+     * <p>
+     * Run with -Dmetrics=true to have the time spent in each {@link Stage} written
+     * to metrics.json at the end.
+     */
     public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("batch")) {
+            runBatch(Path.of(args[1]));
+            writeMetrics();
+            return;
+        }
+        if (args.length == 3 && args[0].equals("render")) {
+            renderCube(Path.of(args[1]), args[2]);
+            writeMetrics();
+            return;
+        }
+        if ((args.length == 1 || args.length == 2) && args[0].equals("adaptive")) {
+            propagateLightAdaptive(
+                    256, 256,
+                    5.6e-3, 5.6e-3,
+                    0.8,
+                    "triangle_256.png",
+                    "triangle_256_propagated.png",
+                    args.length == 2 ? Double.parseDouble(args[1]) : ADAPTIVE_TOLERANCE
+            );
+            writeMetrics();
+            return;
+        }
+
+        if (args.length == 2 && args[0].equals("frames")) {
+            final Path directory = Files.createDirectories(Path.of(args[1]));
+            final List<MonochromaticData> frames = propagateLight(
+                    256, 256,
+                    5.6e-3, 5.6e-3,
+                    0.8,
+                    "triangle_256.png",
+                    "triangle_256_propagated.png",
+                    null,
+                    null,
+                    true
+            );
+            writeFrames(directory, frames, 256, 256);
+            writeMetrics();
+            return;
+        }
+
+        if (args.length == 6 && args[0].equals("zoom")) {
+            final double minX = Double.parseDouble(args[1]);
+            final double minY = Double.parseDouble(args[2]);
+            final double maxX = Double.parseDouble(args[3]);
+            final double maxY = Double.parseDouble(args[4]);
+            final int pixelsX = Integer.parseInt(args[5]);
+            final int pixelsY = Math.max(1, (int) Math.round(pixelsX * (maxY - minY) / (maxX - minX)));
+            propagateLight(
+                    256, 256,
+                    5.6e-3, 5.6e-3,
+                    0.8,
+                    "triangle_256.png",
+                    "triangle_256_zoom.png",
+                    null,
+                    new ObservationWindow(minX, minY, maxX, maxY, pixelsX, pixelsY),
+                    false
+            );
+            writeMetrics();
+            return;
+        }
+
         long start = System.nanoTime();
         propagateLight(
                 256, 256,
                 5.6e-3, 5.6e-3,
                 0.8,
                 "triangle_256.png",
-                "triangle_256_propagated.png"
+                "triangle_256_propagated.png",
+                args.length == 1 ? Path.of(args[0]) : null,
+                null,
+                false
         );
         long finish = System.nanoTime();
         System.out.println("Fully took " + ((double) (finish - start) / 1_000_000.0) + " ms");
+        writeMetrics();
     }
 
-    private static void propagateLight(
+    private static void writeMetrics() throws IOException {
+        if (!Metrics.ENABLED) return;
+
+        Files.writeString(METRICS_PATH, Metrics.summary());
+        System.out.println("Metrics written to " + METRICS_PATH);
+    }
+
+    /**
+     * Writes each frame's intensities to directory as a gray PFM, named by its
+     * wavelength in nanometres
+     */
+    private static void writeFrames(Path directory, List<MonochromaticData> frames, int width, int height)
+            throws IOException {
+        final float[] samples = new float[width * height];
+        for (MonochromaticData frame : frames) {
+            for (int i = 0; i < samples.length; i++)
+                samples[i] = (float) frame.intensities()[i];
+            final String name = String.format(Locale.ROOT, "%.1fnm.pfm", frame.wavelength() * 1e9);
+            PFMWriter.write(directory.resolve(name), samples, width, height, 1);
+        }
+        System.out.println(frames.size() + " frames written to " + directory);
+    }
+
+    /**
+     * Simulates white light through a mask and writes the resulting colours to an image.
+     * <p>
+     * Each wavelength is folded into running XYZ planes as soon as it is done, so only
+     * those are kept. Set keepMonochromaticFrames to also collect every wavelength's
+     * intensities, at the cost of one full plane per wavelength. Give a cubePath to
+     * save every wavelength's intensities to a {@link SpectralCube} as the sweep runs.
+     * Give a window to render only that part of the screen.
+     *
+     * @return the per-wavelength frames if keepMonochromaticFrames, otherwise an empty list
+     */
+    private static List<MonochromaticData> propagateLight(
             int extentX, int extentY,
             double physicalExtentX, double physicalExtentY,
             double distance,
             String amplitudeMaskPath,
-            String saveFilePath
+            String saveFilePath,
+            Path cubePath,
+            ObservationWindow window,
+            boolean keepMonochromaticFrames
     ) throws IOException {
+        if (cubePath != null && window != null)
+            throw new IllegalArgumentException("A spectral cube covers the whole grid");
+
         System.out.println("polychromatic test started!");
-        final double[] amplitudeMask = new double[extentX * extentY];
-
-        final File amplitudeMaskFile = new File(amplitudeMaskPath);
-        final BufferedImage amplitudeMaskImage = ImageIO.read(amplitudeMaskFile);
-        final int amplitudeMaskImageWidth = amplitudeMaskImage.getWidth();
-        final int amplitudeMaskImageHeight = amplitudeMaskImage.getHeight();
-        if (amplitudeMaskImageWidth != extentX || amplitudeMaskImageHeight != extentY)
-            throw new IllegalStateException();
-
-        for (int y = 0; y < extentY; y++)
-            for (int x = 0; x < extentX; x++) {
-                final int whiteThreshold = 250;
-
-                final int argb = amplitudeMaskImage.getRGB(x, y);
-                final int alpha = (argb >>> 24) & 0xFF;
-                final int red = (argb >>> 16) & 0xFF;
-                final int green = (argb >>> 8) & 0xFF;
-                final int blue = argb & 0xFF;
-
-                final boolean isWhite = alpha > 0 &&
-                        red >= whiteThreshold &&
-                        green >= whiteThreshold &&
-                        blue >= whiteThreshold;
-                if (isWhite) amplitudeMask[y * extentX + x] = 1.0;
-            }
+        final Metrics.Span decoding = Metrics.start(Stage.MASK_DECODE);
+        final double[] amplitudeMask = MaskLoader.read(
+                new File(amplitudeMaskPath),
+                extentX, extentY,
+                MaskLoader.Mode.THRESHOLD
+        );
+        Metrics.stop(decoding);
+
+        final int imageX = window == null ? extentX : window.resolutionX();
+        final int imageY = window == null ? extentY : window.resolutionY();
 
         long start = System.nanoTime();
         final ArrayList<MonochromaticData> lightData = new ArrayList<>();
+        final CIE cie = CIE.parseColorData(new File("cie-cmf.txt"));
+        final XYZAccumulator accumulator = new XYZAccumulator(cie, imageX * imageY, REFLECTANCE);
+        PolychromaticSimulation.FrameConsumer frames = accumulator;
+        if (keepMonochromaticFrames)
+            frames = frames.andThen((wavelength, intensities) ->
+                    lightData.add(new MonochromaticData(wavelength, intensities.clone())));
 
         final PolychromaticLight whiteLight = PolychromaticLight.parsePolychromaticData(new File("illuminant_d65.txt"));
         System.out.println("  " + whiteLight.lightData.size() + " wavelengths");
-        int count = 0;
-        for (PolychromaticLight.WavelengthWithIntensity wavelengthWithIntensity : whiteLight.lightData) {
-            final double wavelength = wavelengthWithIntensity.wavelength();
-            final double intensity = wavelengthWithIntensity.intensity();
-
-            final double[] incidentIntensity = new double[extentX * extentY];
-            Arrays.fill(incidentIntensity, intensity);
-
-            final fft.Complex[] observation = AngularSpectrumMethod.process(
-                    wavelength,
-                    physicalExtentX, physicalExtentY,
-                    distance,
-                    extentX, extentY,
-                    amplitudeMask,
-                    incidentIntensity
+        final SpectralCubeWriter cube = cubePath == null ? null : new SpectralCubeWriter(
+                cubePath,
+                extentX, extentY,
+                whiteLight.lightData,
+                SpectralCube.Encoding.FLOAT32,
+                SpectralCube.Compression.NONE
+        );
+        if (cube != null) frames = frames.andThen(cube);
+        final AngularSpectrumPropagator propagator = AngularSpectrumPropagator.forMask(
+                amplitudeMask,
+                new PropagationGeometry(physicalExtentX, physicalExtentY, extentX, extentY)
+        );
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            new PolychromaticSimulation(propagator, distance, executor, 2 * threads, window).run(
+                    whiteLight.lightData,
+                    frames,
+                    (finished, total) -> {
+                        if (finished % 10 == 0)
+                            System.out.println("  finished " + finished + "/" + total);
+                    }
             );
-
-            final double[] observationIntensity = new double[observation.length];
-            for (int i = 0; i < observation.length; i++)
-                observationIntensity[i] = observation[i].modulus();
-
-            lightData.add(new MonochromaticData(wavelength, observationIntensity));
-
-            if (count % 10 == 0)
-                System.out.println("  finished " + count + "/" + whiteLight.lightData.size());
-            count++;
+        } finally {
+            executor.shutdown();
+            if (cube != null) cube.close();
         }
 
         long finish = System.nanoTime();
         long duration = finish - start;
         System.out.println("Simulation took " + ((double) duration / 1_000_000.0) + "ms");
 
-        writePhysicalVisualization(saveFilePath, lightData, extentX, extentY);
+        accumulator.write(Path.of(saveFilePath), imageX, imageY);
+        return lightData;
     }
 
-    private static void writePhysicalVisualization(
-            String path,
-            List<MonochromaticData> colorData,
-            int extentX, int extentY
+    /**
+     * Same as propagateLight, propagating only the wavelengths an
+     * {@link AdaptiveSpectralSampler} picks for the given tolerance
+     */
+    private static void propagateLightAdaptive(
+            int extentX, int extentY,
+            double physicalExtentX, double physicalExtentY,
+            double distance,
+            String amplitudeMaskPath,
+            String saveFilePath,
+            double tolerance
     ) throws IOException {
-        final double reflectance = 3.0;
-        final int numPoints = extentX * extentY;
-        for (MonochromaticData data : colorData)
-            if (data.intensities.length != numPoints)
-                throw new IllegalArgumentException();
+        System.out.println("adaptive polychromatic test started!");
+        final Metrics.Span decoding = Metrics.start(Stage.MASK_DECODE);
+        final double[] amplitudeMask = MaskLoader.read(
+                new File(amplitudeMaskPath),
+                extentX, extentY,
+                MaskLoader.Mode.THRESHOLD
+        );
+        Metrics.stop(decoding);
 
-        final ArrayList<Double> wavelengths = new ArrayList<>();
-        for (MonochromaticData data : colorData)
-            wavelengths.add(data.wavelength);
+        long start = System.nanoTime();
+        final CIE cie = CIE.parseColorData(new File("cie-cmf.txt"));
+        final PolychromaticLight whiteLight = PolychromaticLight.parsePolychromaticData(new File("illuminant_d65.txt"));
+        final AngularSpectrumPropagator propagator = AngularSpectrumPropagator.forMask(
+                amplitudeMask,
+                new PropagationGeometry(physicalExtentX, physicalExtentY, extentX, extentY)
+        );
+        final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final AdaptiveSpectralSampler.Result result;
+        try {
+            result = new AdaptiveSpectralSampler(propagator, distance, executor, cie, REFLECTANCE).run(
+                    whiteLight.lightData,
+                    ADAPTIVE_INITIAL_SAMPLES,
+                    tolerance,
+                    (samples, total) -> System.out.println("  " + samples + "/" + total + " wavelengths sampled")
+            );
+        } finally {
+            executor.shutdown();
+        }
 
+        long finish = System.nanoTime();
+        System.out.println("Simulation took " + ((double) (finish - start) / 1_000_000.0) + "ms");
+        System.out.println("  " + result.samples() + " of " + whiteLight.lightData.size() + " wavelengths propagated");
+        System.out.println("  estimated error: delta E " + result.maxDeltaE() + " at most, "
+                + result.meanDeltaE() + " on average");
+
+        result.colors().write(Path.of(saveFilePath), extentX, extentY);
+    }
+
+    private static void runBatch(Path manifestPath) throws IOException {
+        final List<BatchJob> jobs = JobManifest.read(manifestPath);
+        System.out.println("batch of " + jobs.size() + " jobs started!");
+
+        long start = System.nanoTime();
+        final int[] failures = {0};
+        try (BatchRunner runner = new BatchRunner(Runtime.getRuntime().availableProcessors())) {
+            runner.run(jobs, report -> {
+                if (!report.succeeded()) {
+                    failures[0]++;
+                    System.out.println("  " + report.job().output() + " failed: " + report.failure());
+                    return;
+                }
+                System.out.println("  " + report.job().output()
+                        + ": read " + ((double) report.read() / 1_000_000.0) + "ms"
+                        + ", simulate " + ((double) report.simulate() / 1_000_000.0) + "ms"
+                        + ", write " + ((double) report.write() / 1_000_000.0) + "ms");
+            });
+        }
+        System.out.println("Batch took " + ((double) (System.nanoTime() - start) / 1_000_000.0) + "ms, "
+                + failures[0] + " of " + jobs.size() + " jobs failed");
+    }
+
+    /**
+     * Renders a cube saved by propagateLight with the current reflectance and
+     * illuminant, which need not be the ones it was simulated with
+     */
+    private static void renderCube(Path cubePath, String saveFilePath) throws IOException {
         final CIE cie = CIE.parseColorData(new File("cie-cmf.txt"));
+        final PolychromaticLight whiteLight = PolychromaticLight.parsePolychromaticData(new File("illuminant_d65.txt"));
+
+        try (SpectralCube cube = SpectralCube.open(cubePath)) {
+            long start = System.nanoTime();
+            final XYZAccumulator accumulator = new XYZAccumulator(cie, cube.numPoints(), REFLECTANCE);
+            cube.replay(whiteLight.lightData, accumulator);
+            System.out.println("Replay took " + ((double) (System.nanoTime() - start) / 1_000_000.0) + "ms");
 
-        final BufferedImage image = new BufferedImage(extentX, extentY, BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < extentY; y++)
-            for (int x = 0; x < extentX; x++) {
-                final ArrayList<Double> intensities = new ArrayList<>();
-                for (MonochromaticData data : colorData)
-                    intensities.add(data.intensities[y * extentX + x]);
-                final java.awt.Color color =
-                        cie.calculateColor(wavelengths, intensities, reflectance);
-                image.setRGB(x, y, color.getRGB());
-            }
-
-        ImageIO.write(image, "png", new File(path));
+            accumulator.write(Path.of(saveFilePath), cube.width, cube.height);
+        }
     }
 
     value record MonochromaticData(double wavelength, double[] intensities) {
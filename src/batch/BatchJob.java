@@ -0,0 +1,42 @@
+package batch;
+
+import image.MaskLoader;
+
+import java.nio.file.Path;
+
+/**
+ * One simulation of a {@link JobManifest}: a mask lit by a spectrum, observed at
+ * a distance and written to an image.
+ *
+ * @param mask          mask image, exactly resolutionX x resolutionY pixels
+ * @param maskMode      how the mask's pixels become amplitudes
+ * @param extentX       half the x-size of the simulation, in metres
+ * @param extentY       half the y-size of the simulation, in metres
+ * @param resolutionX   the number of points used to represent the X direction
+ * @param resolutionY   the number of points used to represent the Y direction
+ * @param distance      observation distance from incident, in metres
+ * @param spectrum      illuminant, as read by {@link color.PolychromaticLight#parsePolychromaticData}
+ * @param colorMatching colour matching functions, as read by {@link color.CIE#parseColorData}
+ * @param reflectance   reflectance of the screen
+ * @param output        image to write, PNG or PFM by its extension
+ */
+public value record BatchJob(
+        Path mask,
+        MaskLoader.Mode maskMode,
+        double extentX,
+        double extentY,
+        int resolutionX,
+        int resolutionY,
+        double distance,
+        Path spectrum,
+        Path colorMatching,
+        double reflectance,
+        Path output
+) {
+    public BatchJob {
+        if (resolutionX <= 0 || resolutionY <= 0)
+            throw new IllegalArgumentException("Resolution must be positive");
+        if (!(extentX > 0.0) || !(extentY > 0.0))
+            throw new IllegalArgumentException("Extent must be positive");
+    }
+}
@@ -0,0 +1,237 @@
+package batch;
+
+import color.CIE;
+import color.PolychromaticLight;
+import fft.AngularSpectrumPropagator;
+import fft.PropagationGeometry;
+import image.MaskLoader;
+import simulation.PolychromaticSimulation;
+import simulation.XYZAccumulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link BatchJob}s one after another in a single process, so the JIT and
+ * the FFT plans stay warm from one job to the next.
+ * <p>
+ * Each job goes through three stages: reading (decoding the mask, building its
+ * {@link AngularSpectrumPropagator}), simulating, and writing the image. Reading
+ * and writing each run on a thread of their own, so the next job's mask is
+ * decoded and the previous job's image is encoded while the current job
+ * simulates. Parsed spectra and colour matching functions are kept for the
+ * whole run, keyed by path, and the propagators of the last few masks are kept
+ * so jobs that only differ in distance or spectrum skip the mask's transform.
+ * <p>
+ * A job that fails is reported with its error and the batch carries on.
+ */
+public final class BatchRunner implements AutoCloseable {
+    /**
+     * Propagators kept for reuse; each holds the half spectrum of its mask
+     */
+    private static final int MAX_PROPAGATORS = 4;
+    /**
+     * Jobs whose images may still be encoding while later jobs simulate; each
+     * holds its XYZ planes until written
+     */
+    private static final int MAX_PENDING_WRITES = 2;
+
+    /**
+     * Timing of one job, in nanoseconds
+     *
+     * @param job      the job
+     * @param read     decoding the mask and preparing the propagator
+     * @param simulate propagating every wavelength and folding it into colours
+     * @param write    encoding and writing the image
+     * @param failure  what stopped the job, or null if it finished
+     */
+    public value record JobReport(BatchJob job, long read, long simulate, long write, Throwable failure) {
+        public boolean succeeded() {
+            return failure == null;
+        }
+    }
+
+    private value record MaskKey(
+            Path mask,
+            MaskLoader.Mode mode,
+            double extentX,
+            double extentY,
+            int resolutionX,
+            int resolutionY
+    ) {
+    }
+
+    private value record Prepared(
+            CIE colorMatching,
+            PolychromaticLight spectrum,
+            AngularSpectrumPropagator propagator,
+            long nanos
+    ) {
+    }
+
+    private final int threads;
+    private final ExecutorService compute;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    // only touched on the reader thread
+    private final Map<Path, CIE> colorMatchings = new HashMap<>();
+    private final Map<Path, PolychromaticLight> spectra = new HashMap<>();
+    private final LinkedHashMap<MaskKey, AngularSpectrumPropagator> propagators =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param threads how many wavelengths are propagated at once
+     */
+    public BatchRunner(int threads) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+
+        this.threads = threads;
+        this.compute = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Runs jobs in order, handing each one's report to reports on the calling
+     * thread, also in order, once its image has been written
+     */
+    public void run(List<BatchJob> jobs, Consumer<JobReport> reports) {
+        final ArrayDeque<CompletableFuture<JobReport>> pending = new ArrayDeque<>();
+        CompletableFuture<Prepared> next = jobs.isEmpty() ? null : read(jobs.get(0));
+
+        for (int i = 0; i < jobs.size(); i++) {
+            final BatchJob job = jobs.get(i);
+            final CompletableFuture<Prepared> current = next;
+            next = i + 1 < jobs.size() ? read(jobs.get(i + 1)) : null;
+
+            pending.addLast(simulate(job, current));
+            while (pending.size() > MAX_PENDING_WRITES)
+                reports.accept(pending.removeFirst().join());
+        }
+
+        while (!pending.isEmpty())
+            reports.accept(pending.removeFirst().join());
+    }
+
+    private CompletableFuture<Prepared> read(BatchJob job) {
+        return CompletableFuture.supplyAsync(() -> {
+            final long start = System.nanoTime();
+            try {
+                final CIE colorMatching = colorMatchings.computeIfAbsent(job.colorMatching(), BatchRunner::parseColorMatching);
+                final PolychromaticLight spectrum = spectra.computeIfAbsent(job.spectrum(), BatchRunner::parseSpectrum);
+                final AngularSpectrumPropagator propagator = propagator(job);
+                return new Prepared(colorMatching, spectrum, propagator, System.nanoTime() - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, reader);
+    }
+
+    private AngularSpectrumPropagator propagator(BatchJob job) throws IOException {
+        final MaskKey key = new MaskKey(
+                job.mask(), job.maskMode(),
+                job.extentX(), job.extentY(),
+                job.resolutionX(), job.resolutionY()
+        );
+        final AngularSpectrumPropagator cached = propagators.get(key);
+        if (cached != null) return cached;
+
+        final double[] mask = MaskLoader.read(job.mask().toFile(), job.resolutionX(), job.resolutionY(), job.maskMode());
+        final AngularSpectrumPropagator propagator = AngularSpectrumPropagator.forMask(
+                mask,
+                new PropagationGeometry(job.extentX(), job.extentY(), job.resolutionX(), job.resolutionY())
+        );
+        propagators.put(key, propagator);
+
+        final Iterator<AngularSpectrumPropagator> eldest = propagators.values().iterator();
+        while (propagators.size() > MAX_PROPAGATORS) {
+            eldest.next();
+            eldest.remove();
+        }
+        return propagator;
+    }
+
+    /**
+     * Simulates job on the calling thread once prepared is done, then queues its
+     * image on the writer
+     */
+    private CompletableFuture<JobReport> simulate(BatchJob job, CompletableFuture<Prepared> prepared) {
+        final Prepared ready;
+        try {
+            ready = prepared.join();
+        } catch (CompletionException e) {
+            return CompletableFuture.completedFuture(new JobReport(job, 0L, 0L, 0L, unwrap(e)));
+        }
+
+        final long start = System.nanoTime();
+        final XYZAccumulator accumulator =
+                new XYZAccumulator(ready.colorMatching(), job.resolutionX() * job.resolutionY(), job.reflectance());
+        try {
+            new PolychromaticSimulation(ready.propagator(), job.distance(), compute, 2 * threads).run(
+                    ready.spectrum().lightData,
+                    accumulator,
+                    (finished, total) -> {
+                    }
+            );
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(new JobReport(job, ready.nanos(), 0L, 0L, unwrap(e)));
+        }
+        final long simulated = System.nanoTime() - start;
+
+        return CompletableFuture.supplyAsync(() -> {
+            final long writeStart = System.nanoTime();
+            try {
+                accumulator.write(job.output(), job.resolutionX(), job.resolutionY());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return System.nanoTime() - writeStart;
+        }, writer).handle((written, failure) -> new JobReport(
+                job,
+                ready.nanos(),
+                simulated,
+                failure == null ? written : 0L,
+                failure == null ? null : unwrap(failure)
+        ));
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) failure = failure.getCause();
+        if (failure instanceof UncheckedIOException && failure.getCause() != null) failure = failure.getCause();
+        return failure;
+    }
+
+    private static CIE parseColorMatching(Path path) {
+        try {
+            return CIE.parseColorData(path.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PolychromaticLight parseSpectrum(Path path) {
+        try {
+            return PolychromaticLight.parsePolychromaticData(path.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        reader.shutdown();
+        writer.shutdown();
+        compute.shutdown();
+    }
+}
@@ -0,0 +1,114 @@
+package batch;
+
+import image.MaskLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a list of {@link BatchJob}s from a text file, one job per line:
+ * <pre>
+ * # comments and blank lines are skipped
+ * defaults extent=5.6e-3 resolution=256 spectrum=illuminant_d65.txt
+ * mask=triangle_256.png distance=0.4 output=near.png
+ * mask=triangle_256.png distance=0.8 output=far.png
+ * </pre>
+ * A line is whitespace-separated key=value pairs. A line starting with
+ * "defaults" sets values for the jobs below it instead of being a job. Keys:
+ * <ul>
+ *     <li>mask, output: paths, required</li>
+ *     <li>distance: metres, required</li>
+ *     <li>extent: half-size in metres, "x" or "x,y", required</li>
+ *     <li>resolution: points, "n" or "x,y", required</li>
+ *     <li>mode: threshold (default) or amplitude, see {@link MaskLoader.Mode}</li>
+ *     <li>spectrum: path, default illuminant_d65.txt</li>
+ *     <li>cmf: colour matching functions path, default cie-cmf.txt</li>
+ *     <li>reflectance: default 3.0</li>
+ * </ul>
+ * Relative paths are resolved against the manifest's directory.
+ */
+public final class JobManifest {
+    private static final String DEFAULTS = "defaults";
+    private static final Set<String> KEYS = Set.of(
+            "mask", "output", "distance", "extent", "resolution", "mode", "spectrum", "cmf", "reflectance"
+    );
+
+    private JobManifest() {
+    }
+
+    public static List<BatchJob> read(Path manifest) throws IOException {
+        final Path directory = manifest.toAbsolutePath().getParent();
+        final List<String> lines = Files.readAllLines(manifest);
+
+        final Map<String, String> defaults = new HashMap<>();
+        defaults.put("mode", "threshold");
+        defaults.put("spectrum", "illuminant_d65.txt");
+        defaults.put("cmf", "cie-cmf.txt");
+        defaults.put("reflectance", "3.0");
+
+        final ArrayList<BatchJob> jobs = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            final String location = manifest + ":" + (i + 1);
+            final String[] tokens = line.split("\\s+");
+            final boolean isDefaults = tokens[0].equals(DEFAULTS);
+            final Map<String, String> values = isDefaults ? defaults : new HashMap<>(defaults);
+            for (int t = isDefaults ? 1 : 0; t < tokens.length; t++) {
+                final int equals = tokens[t].indexOf('=');
+                if (equals <= 0) throw new IOException(location + ": expected key=value, got " + tokens[t]);
+
+                final String key = tokens[t].substring(0, equals);
+                if (!KEYS.contains(key)) throw new IOException(location + ": unknown key " + key);
+                values.put(key, tokens[t].substring(equals + 1));
+            }
+
+            if (!isDefaults) jobs.add(job(values, directory, location));
+        }
+        return jobs;
+    }
+
+    private static BatchJob job(Map<String, String> values, Path directory, String location) throws IOException {
+        try {
+            final String[] extent = pair(required(values, "extent", location), location);
+            final String[] resolution = pair(required(values, "resolution", location), location);
+            return new BatchJob(
+                    directory.resolve(required(values, "mask", location)),
+                    MaskLoader.Mode.valueOf(values.get("mode").toUpperCase(Locale.ROOT)),
+                    Double.parseDouble(extent[0]), Double.parseDouble(extent[1]),
+                    Integer.parseInt(resolution[0]), Integer.parseInt(resolution[1]),
+                    Double.parseDouble(required(values, "distance", location)),
+                    directory.resolve(values.get("spectrum")),
+                    directory.resolve(values.get("cmf")),
+                    Double.parseDouble(values.get("reflectance")),
+                    directory.resolve(required(values, "output", location))
+            );
+        } catch (IllegalArgumentException e) {
+            throw new IOException(location + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String required(Map<String, String> values, String key, String location) throws IOException {
+        final String value = values.get(key);
+        if (value == null) throw new IOException(location + ": missing " + key);
+        return value;
+    }
+
+    /**
+     * "a" as {a, a}, "a,b" as {a, b}
+     */
+    private static String[] pair(String value, String location) throws IOException {
+        final String[] parts = value.split(",", -1);
+        if (parts.length > 2) throw new IOException(location + ": expected one or two values, got " + value);
+
+        return parts.length == 2 ? parts : new String[]{parts[0], parts[0]};
+    }
+}
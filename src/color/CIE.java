@@ -1,5 +1,9 @@
 package color;
 
+import metrics.ColorEvent;
+import metrics.Metrics;
+import metrics.Stage;
+
 import java.awt.*;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -7,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.IntStream;
 
 public class CIE {
     private static double[] xyz2rgb = {
@@ -14,10 +19,21 @@ public class CIE {
             -0.9689, 1.8758, 0.0415,
             0.0557, -0.204, 1.057
     };
+    /**
+     * Pixels converted together by the batch methods; one block is one parallel task
+     */
+    private static final int BLOCK = 4096;
     private final List<WavelengthXYZColor> colorMatching;
+    /**
+     * wavelengths of colorMatching, ascending, for binary search
+     */
+    private final double[] matchingWavelengths;
 
     private CIE(List<WavelengthXYZColor> colorMatching) {
         this.colorMatching = colorMatching;
+        this.matchingWavelengths = new double[colorMatching.size()];
+        for (int i = 0; i < matchingWavelengths.length; i++)
+            matchingWavelengths[i] = colorMatching.get(i).wavelength;
     }
 
     public static CIE parseColorData(File file) throws FileNotFoundException {
@@ -44,7 +60,11 @@ public class CIE {
         return new CIE(colorMatching);
     }
 
-    private XYZColor tristimulus(double wavelength) {
+    /**
+     * Colour matching functions at a wavelength, interpolated from the table;
+     * zero outside of it
+     */
+    public XYZColor tristimulus(double wavelength) {
         if (colorMatching.isEmpty()) throw new IllegalStateException();
 
         final WavelengthXYZColor first = colorMatching.getFirst();
@@ -53,21 +73,20 @@ public class CIE {
         if (wavelength < first.wavelength || wavelength > last.wavelength)
             return new XYZColor(0.0, 0.0, 0.0);
 
-        int index = 0;
-        while (index < colorMatching.size()
-                && colorMatching.get(index).wavelength < wavelength) index++;
-
-        if (index == 0) return new XYZColor(
+        int index = Arrays.binarySearch(matchingWavelengths, wavelength);
+        if (index >= 0) return new XYZColor(
                 colorMatching.get(index).x,
                 colorMatching.get(index).y,
                 colorMatching.get(index).z
         );
+        // first entry above wavelength, never 0 or past the end after the range check
+        index = -index - 1;
 
         final WavelengthXYZColor previous = colorMatching.get(index - 1);
         final WavelengthXYZColor next = colorMatching.get(index);
         final double range = next.wavelength - previous.wavelength;
-        final double factorPrevious = range - wavelength;
-        final double factorNext = 1.0 - factorPrevious;
+        final double factorNext = (wavelength - previous.wavelength) / range;
+        final double factorPrevious = 1.0 - factorNext;
 
         return new XYZColor(
                 factorPrevious * previous.x + factorNext * next.x,
@@ -76,6 +95,128 @@ public class CIE {
         );
     }
 
+    /**
+     * Colour matching functions resampled at the given wavelengths, to be reused for
+     * every pixel of {@link #toSRGB(double[][], SpectralWeights, double, int[])}
+     */
+    public SpectralWeights weights(double[] wavelengths) {
+        final double[] x = new double[wavelengths.length];
+        final double[] y = new double[wavelengths.length];
+        final double[] z = new double[wavelengths.length];
+        for (int i = 0; i < wavelengths.length; i++) {
+            final XYZColor stimulus = tristimulus(wavelengths[i]);
+            x[i] = stimulus.x;
+            y[i] = stimulus.y;
+            z[i] = stimulus.z;
+        }
+        return new SpectralWeights(wavelengths.clone(), x, y, z);
+    }
+
+    /**
+     * Same as {@link #toSRGB(double[][], SpectralWeights, double, int[])}, resampling
+     * the colour matching functions first
+     */
+    public void toSRGB(double[][] spectra, double[] wavelengths, double reflectance, int[] argbOut) {
+        toSRGB(spectra, weights(wavelengths), reflectance, argbOut);
+    }
+
+    /**
+     * Batch form of {@link #calculateColor}: converts a whole image, packed as
+     * 0xAARRGGBB like {@link Color#getRGB()}.
+     * <p>
+     * Pixels are processed in blocks, in parallel; within a block each spectrum
+     * plane is read sequentially.
+     *
+     * @param spectra     spectra[w][pixel] is the intensity at wavelength w
+     * @param weights     colour matching functions at the wavelengths of spectra
+     * @param reflectance
+     * @param argbOut     receives one colour per pixel
+     */
+    public void toSRGB(double[][] spectra, SpectralWeights weights, double reflectance, int[] argbOut) {
+        if (spectra.length != weights.wavelengths.length) throw new IllegalArgumentException();
+        final int numPoints = argbOut.length;
+        for (double[] plane : spectra)
+            if (plane.length != numPoints) throw new IllegalArgumentException();
+
+        final ColorEvent event = new ColorEvent(numPoints, spectra.length);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.COLOR);
+        final double scale = reflectance / Math.PI;
+        final int blocks = (numPoints + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            final int start = block * BLOCK;
+            final int end = Math.min(start + BLOCK, numPoints);
+            final double[] x = new double[end - start];
+            final double[] y = new double[end - start];
+            final double[] z = new double[end - start];
+
+            for (int w = 0; w < spectra.length; w++) {
+                final double[] plane = spectra[w];
+                final double factorX = scale * weights.x[w];
+                final double factorY = scale * weights.y[w];
+                final double factorZ = scale * weights.z[w];
+                for (int i = start; i < end; i++) {
+                    final double intensity = plane[i];
+                    x[i - start] += intensity * factorX;
+                    y[i - start] += intensity * factorY;
+                    z[i - start] += intensity * factorZ;
+                }
+            }
+
+            for (int i = start; i < end; i++)
+                argbOut[i] = toARGB(x[i - start], y[i - start], z[i - start]);
+        });
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    /**
+     * Converts tristimulus planes to packed 0xAARRGGBB, in parallel blocks
+     */
+    public void toARGB(double[] x, double[] y, double[] z, int[] argbOut) {
+        final int numPoints = argbOut.length;
+        if (x.length != numPoints || y.length != numPoints || z.length != numPoints)
+            throw new IllegalArgumentException();
+
+        final ColorEvent event = new ColorEvent(numPoints, 0);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.COLOR);
+        final int blocks = (numPoints + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            final int end = Math.min((block + 1) * BLOCK, numPoints);
+            for (int i = block * BLOCK; i < end; i++)
+                argbOut[i] = toARGB(x[i], y[i], z[i]);
+        });
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    /**
+     * Converts tristimulus planes to linear sRGB, neither gamma-encoded nor
+     * clamped, interleaved as r, g, b per point; for floating-point outputs that
+     * keep the full range
+     */
+    public void toLinearRGB(double[] x, double[] y, double[] z, float[] rgbOut) {
+        final int numPoints = x.length;
+        if (y.length != numPoints || z.length != numPoints || rgbOut.length != 3 * numPoints)
+            throw new IllegalArgumentException();
+
+        final ColorEvent event = new ColorEvent(numPoints, 0);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.COLOR);
+        final int blocks = (numPoints + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            final int end = Math.min((block + 1) * BLOCK, numPoints);
+            for (int i = block * BLOCK; i < end; i++) {
+                rgbOut[3 * i] = (float) (x[i] * xyz2rgb[0] + y[i] * xyz2rgb[1] + z[i] * xyz2rgb[2]);
+                rgbOut[3 * i + 1] = (float) (x[i] * xyz2rgb[3] + y[i] * xyz2rgb[4] + z[i] * xyz2rgb[5]);
+                rgbOut[3 * i + 2] = (float) (x[i] * xyz2rgb[6] + y[i] * xyz2rgb[7] + z[i] * xyz2rgb[8]);
+            }
+        });
+        Metrics.stop(span);
+        event.commit();
+    }
+
     public Color calculateColor(
             List<Double> wavelengths,
             List<Double> intensities,
@@ -98,6 +239,20 @@ public class CIE {
             z += factor * stimulus.z;
         }
 
+        return toColor(x, y, z);
+    }
+
+    /**
+     * Converts tristimulus values to gamma-encoded sRGB, clamped to [0, 255]
+     */
+    public Color toColor(double x, double y, double z) {
+        return new Color(toARGB(x, y, z));
+    }
+
+    /**
+     * {@link #toColor} packed as 0xAARRGGBB, without allocating a {@link Color}
+     */
+    public int toARGB(double x, double y, double z) {
         double linearR = x * xyz2rgb[0] + y * xyz2rgb[1] + z * xyz2rgb[2];
         double linearG = x * xyz2rgb[3] + y * xyz2rgb[4] + z * xyz2rgb[5];
         double linearB = x * xyz2rgb[6] + y * xyz2rgb[7] + z * xyz2rgb[8];
@@ -119,16 +274,52 @@ public class CIE {
         linearG = Math.clamp(linearG, 0.0, 1.0);
         linearB = Math.clamp(linearB, 0.0, 1.0);
 
-        return new Color(
-                (int) (linearR * 255.0),
-                (int) (linearG * 255.0),
-                (int) (linearB * 255.0)
-        );
+        return 0xFF000000 |
+                ((int) (linearR * 255.0) << 16) |
+                ((int) (linearG * 255.0) << 8) |
+                (int) (linearB * 255.0);
+    }
+
+    /*
+    CIELAB relative to the white of the sRGB matrix above, XYZ of RGB (1, 1, 1)
+     */
+    private static final double WHITE_X = 0.95047;
+    private static final double WHITE_Y = 1.0;
+    private static final double WHITE_Z = 1.08883;
+
+    /**
+     * CIE 1976 colour difference, the distance between the two colours in CIELAB
+     * with the sRGB white point. About 1 is just noticeable side by side.
+     */
+    public static double deltaE(double x1, double y1, double z1, double x2, double y2, double z2) {
+        final double fx1 = labFunction(x1 / WHITE_X);
+        final double fy1 = labFunction(y1 / WHITE_Y);
+        final double fz1 = labFunction(z1 / WHITE_Z);
+        final double fx2 = labFunction(x2 / WHITE_X);
+        final double fy2 = labFunction(y2 / WHITE_Y);
+        final double fz2 = labFunction(z2 / WHITE_Z);
+
+        final double deltaL = 116.0 * (fy1 - fy2);
+        final double deltaA = 500.0 * ((fx1 - fy1) - (fx2 - fy2));
+        final double deltaB = 200.0 * ((fy1 - fz1) - (fy2 - fz2));
+        return Math.sqrt(deltaL * deltaL + deltaA * deltaA + deltaB * deltaB);
+    }
+
+    private static double labFunction(double t) {
+        final double delta = 6.0 / 29.0;
+        if (t > delta * delta * delta) return Math.cbrt(t);
+        return t / (3.0 * delta * delta) + 4.0 / 29.0;
     }
 
     private value record WavelengthXYZColor(double wavelength, double x, double y, double z) {
     }
 
-    private value record XYZColor(double x, double y, double z) {
+    public value record XYZColor(double x, double y, double z) {
+    }
+
+    /**
+     * Colour matching functions sampled at a fixed set of wavelengths
+     */
+    public value record SpectralWeights(double[] wavelengths, double[] x, double[] y, double[] z) {
     }
 }
@@ -1,10 +1,15 @@
 package fft;
 
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.PropagationEvent;
+import metrics.Stage;
+
 import java.lang.Math;
 
 public class AngularSpectrumMethod {
     /**
-     * Propagates field
+     * Propagates field, see {@link #processBuffer}
      *
      * @param wavelength        wavelength of monochromatic light
      * @param extentX           half the x-size of the simulation
@@ -25,17 +30,97 @@ public class AngularSpectrumMethod {
             int resolutionY,
             double[] amplitudeMask,
             double[] incidentIntensity
+    ) {
+        return processBuffer(
+                wavelength,
+                extentX, extentY,
+                distance,
+                resolutionX, resolutionY,
+                amplitudeMask,
+                incidentIntensity
+        ).toComplex();
+    }
+
+    /**
+     * Propagates field
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param extentX           half the x-size of the simulation
+     * @param extentY           half the y-size of the simulation
+     * @param distance          observation distance from incident
+     * @param resolutionX       the number of points used to represent the X direction
+     * @param resolutionY       the number of points used to represent the Y direction
+     * @param amplitudeMask     incident amplitude mask
+     * @param incidentIntensity incident field intensity
+     * @return observed field
+     */
+    public static ComplexBuffer processBuffer(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double distance,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] incidentIntensity
+    ) {
+        return processBuffer(
+                wavelength,
+                extentX, extentY,
+                distance,
+                resolutionX, resolutionY,
+                amplitudeMask,
+                null,
+                incidentIntensity
+        );
+    }
+
+    /**
+     * Propagates field. Without a phase mask the incident field is real, and the
+     * forward transform only computes half the spectrum (see {@link FFT#r2c2D}).
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param extentX           half the x-size of the simulation
+     * @param extentY           half the y-size of the simulation
+     * @param distance          observation distance from incident
+     * @param resolutionX       the number of points used to represent the X direction
+     * @param resolutionY       the number of points used to represent the Y direction
+     * @param amplitudeMask     incident amplitude mask
+     * @param phaseMask         incident phase in radians, or null for none
+     * @param incidentIntensity incident field intensity
+     * @return observed field
+     */
+    public static ComplexBuffer processBuffer(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double distance,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity
     ) {
         final int numPoints = resolutionX * resolutionY;
+        checkMasks(numPoints, amplitudeMask, phaseMask, incidentIntensity);
 
-        if (amplitudeMask.length != numPoints)
-            throw new IllegalArgumentException("Amplitude mask size does not match expected resolution");
-        if (incidentIntensity.length != numPoints)
-            throw new IllegalArgumentException("Incident field intensity size does not match expected resolution");
+        final PropagationEvent event = new PropagationEvent(wavelength, distance, resolutionX, resolutionY);
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+        if (phaseMask == null) {
+            final ComplexBuffer observedField = processReal(
+                    wavelength,
+                    extentX, extentY,
+                    distance,
+                    resolutionX, resolutionY,
+                    amplitudeMask,
+                    incidentIntensity
+            );
+            event.commit();
+            return observedField;
+        }
 
-        final Complex[] incidentField = new Complex[numPoints];
-        for (int i = 0; i < numPoints; i++)
-            incidentField[i] = new Complex(amplitudeMask[i] * incidentIntensity[i], 0);
+        final ComplexBuffer incidentField = incidentField(amplitudeMask, phaseMask, incidentIntensity);
 
         /*
           A(k_x, k_y ; 0) = integral^2 U(x', y', 0) e^(-i(k_x x' + k_y y')) dx' dy'
@@ -66,11 +151,19 @@ public class AngularSpectrumMethod {
 //        final Complex[] incidentFieldSpectrum = new Complex[numPoints];
 //        System.arraycopy(incidentField, 0, incidentFieldSpectrum, 0, numPoints);
 //
-        FFT.fft2D(incidentField, resolutionY, resolutionX);
         /*
-        shift because x'_s_x = -L + s_x (2 L_x) / N_x
+        the spectrum is kept transposed (x-major) between the forward and inverse
+        transform, which saves transposing back and forth; only the indexing of the
+        transfer multiply below has to know about it
+         */
+        final PropagationGeometry geometry = new PropagationGeometry(extentX, extentY, resolutionX, resolutionY);
+        final FFTPlan2D plan = FFTPlan2D.parallel(resolutionY, resolutionX);
+        final ComplexBuffer spectrum = new ComplexBuffer(numPoints);
+        FFT.fft2DTransposed(incidentField, spectrum, plan);
+        /*
+        x'_s_x = -L + s_x (2 L_x) / N_x calls for a shift, but rather than shifting the
+        spectrum, the transfer function is tabulated in the unshifted order
          */
-        FFT.shiftCenter(incidentField, resolutionY, resolutionX);
 
         /*
         now to obtain U(x, y, -L), where L is distance to the observation
@@ -82,29 +175,426 @@ public class AngularSpectrumMethod {
         k_z^2 = k^2 - k_x^2 - k_y^2
         k_z = sqrt(((2pi)/wavelength)^2 - (pi n_x / L_x)^2 - (pi n_y / L_y)^2)
         we can accomplish this by multiplying by the centered k_z, shifting, then performing
-        IFFT like normal
+        IFFT like normal; with the transfer function already in unshifted order
+        (see TransferFunction) neither shift is needed
+         */
+
+        /*
+        the transfer function of the transposed geometry is laid out like the
+        transposed spectrum, so the multiply runs straight down both arrays
+         */
+        final TransferFunction transfer =
+                TransferFunctionCache.shared().get(geometry.transposed(), wavelength, distance);
+        ComplexKernels.multiply(spectrum.real, spectrum.imaginary, transfer.cosines, transfer.sines, 0, numPoints);
+
+        FFT.ifft2DTransposed(spectrum, incidentField, plan);
+
+        event.commit();
+        return incidentField;
+    }
+
+    /**
+     * Same propagation as {@link #processBuffer}, evaluating the observed field only
+     * over window, which may be sampled more finely than the grid. The inverse
+     * transform is a {@link ChirpZ} along each axis, so the cost of zooming in
+     * grows with the window's pixels rather than with a finer grid.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param extentX           half the x-size of the simulation
+     * @param extentY           half the y-size of the simulation
+     * @param distance          observation distance from incident
+     * @param resolutionX       the number of points used to represent the X direction
+     * @param resolutionY       the number of points used to represent the Y direction
+     * @param amplitudeMask     incident amplitude mask
+     * @param phaseMask         incident phase in radians, or null for none
+     * @param incidentIntensity incident field intensity
+     * @param window            where to evaluate the observed field
+     * @return observed field, row-major window.resolutionY x window.resolutionX
+     */
+    public static ComplexBuffer processWindow(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double distance,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity,
+            ObservationWindow window
+    ) {
+        final int numPoints = resolutionX * resolutionY;
+        checkMasks(numPoints, amplitudeMask, phaseMask, incidentIntensity);
+
+        final PropagationGeometry geometry = new PropagationGeometry(extentX, extentY, resolutionX, resolutionY);
+        if (phaseMask == null)
+            return AngularSpectrumPropagator.forMask(incidentField(amplitudeMask, incidentIntensity), geometry)
+                    .propagateWindow(wavelength, distance, 1.0, window);
+
+        final PropagationEvent event =
+                new PropagationEvent(wavelength, distance, window.resolutionX(), window.resolutionY());
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+
+        // row-major this time, which is the layout ChirpZ.inverse2D reads
+        final FFTPlan2D plan = FFTPlan2D.parallel(resolutionY, resolutionX);
+        final ComplexBuffer spectrum = incidentField(amplitudeMask, phaseMask, incidentIntensity);
+        FFT.fft2D(spectrum, plan);
+        final TransferFunction transfer = TransferFunctionCache.shared().get(geometry, wavelength, distance);
+        ComplexKernels.multiply(spectrum.real, spectrum.imaginary, transfer.cosines, transfer.sines, 0, numPoints);
+
+        final Metrics.Span span = Metrics.start(Stage.INVERSE_FFT);
+        final ComplexBuffer observedField = ChirpZ.inverse2D(
+                spectrum, resolutionY, resolutionX,
+                window.alongX(geometry), window.alongY(geometry),
+                plan.activePool()
+        );
+        Metrics.stop(span);
+        event.commit();
+        return observedField;
+    }
+
+    /**
+     * Same propagation as {@link #processBuffer} for a field held off the heap, which is
+     * replaced by the observed field. Nothing of the grid's size is allocated on
+     * the heap: the transfer function is kept on one quadrant (see
+     * {@link TransferFunction}) and the transforms stage a few lines at a time
+     * (see {@link SegmentFFT#filter2D}).
+     *
+     * @param geometry   grid the field is sampled on
+     * @param wavelength wavelength of monochromatic light
+     * @param distance   observation distance from incident
+     * @param field      incident field, row-major resolutionY x resolutionX
+     * @param plan       plan for resolutionY x resolutionX; parallel plans need the
+     *                   field to be in a shared arena
+     */
+    public static void processInPlace(
+            PropagationGeometry geometry,
+            double wavelength,
+            double distance,
+            SegmentComplexBuffer field,
+            FFTPlan2D plan
+    ) {
+        if (field.length() != geometry.numPoints())
+            throw new IllegalArgumentException("Field size does not match expected resolution");
+        if (plan.rows != geometry.resolutionY() || plan.columns != geometry.resolutionX())
+            throw new IllegalArgumentException("Plan does not match expected resolution");
+
+        final PropagationEvent event =
+                new PropagationEvent(wavelength, distance, geometry.resolutionX(), geometry.resolutionY());
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+        final double[] frequencyZ = TransferFunction.quadrantFrequencyZ(geometry, wavelength);
+        final double[] cosines = new double[frequencyZ.length];
+        final double[] sines = new double[frequencyZ.length];
+        TransferFunction.quadrantAngles(frequencyZ, distance, cosines, sines);
+
+        SegmentFFT.filter2D(field, plan, cosines, sines);
+        event.commit();
+    }
+
+    /**
+     * Single-precision {@link #processBuffer}. The incident field and the transfer
+     * function are evaluated in double and rounded; the transforms and the
+     * transfer multiply run in float on {@link FloatFFT}. A real field (no phase
+     * mask) goes through half-spectrum transforms, as {@link #processBuffer} does;
+     * with a phase mask the transfer function is taken from the shared
+     * {@link TransferFunctionCache}, again as {@link #processBuffer} does.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param extentX           half the x-size of the simulation
+     * @param extentY           half the y-size of the simulation
+     * @param distance          observation distance from incident
+     * @param resolutionX       the number of points used to represent the X direction
+     * @param resolutionY       the number of points used to represent the Y direction
+     * @param amplitudeMask     incident amplitude mask
+     * @param phaseMask         incident phase in radians, or null for none
+     * @param incidentIntensity incident field intensity
+     * @return observed field, in float; {@link FloatComplexBuffer#toDouble} widens
+     * it where a {@link ComplexBuffer} is needed
+     */
+    public static FloatComplexBuffer processFloat(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double distance,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity
+    ) {
+        final int numPoints = resolutionX * resolutionY;
+        checkMasks(numPoints, amplitudeMask, phaseMask, incidentIntensity);
+
+        final PropagationEvent event = new PropagationEvent(wavelength, distance, resolutionX, resolutionY);
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+        final PropagationGeometry geometry = new PropagationGeometry(extentX, extentY, resolutionX, resolutionY);
+        final FFTPlan2D plan = FFTPlan2D.parallel(resolutionY, resolutionX);
+        final FloatComplexBuffer observedField = phaseMask == null
+                ? processFloatReal(geometry, wavelength, distance, amplitudeMask, incidentIntensity, plan)
+                : processFloatComplex(geometry, wavelength, distance, amplitudeMask, phaseMask, incidentIntensity, plan);
+        event.commit();
+        return observedField;
+    }
+
+    /**
+     * {@link #processFloat} for a real incident field, with half-spectrum
+     * transforms as in {@link #processReal}
+     */
+    private static FloatComplexBuffer processFloatReal(
+            PropagationGeometry geometry,
+            double wavelength,
+            double distance,
+            double[] amplitudeMask,
+            double[] incidentIntensity,
+            FFTPlan2D plan
+    ) {
+        final int rows = geometry.resolutionY();
+        final int halfColumns = FFT.halfColumns(geometry.resolutionX());
+
+        // the real part of the result holds the incident field until the inverse overwrites it
+        final FloatComplexBuffer observedField = new FloatComplexBuffer(geometry.numPoints());
+        final float[] incidentField = observedField.real;
+        for (int i = 0; i < incidentField.length; i++)
+            incidentField[i] = (float) (amplitudeMask[i] * incidentIntensity[i]);
+
+        final FloatComplexBuffer cosineSpectrum = new FloatComplexBuffer(rows * halfColumns);
+        final FloatComplexBuffer sineSpectrum = new FloatComplexBuffer(rows * halfColumns);
+        FloatFFT.r2c2D(incidentField, cosineSpectrum, plan);
+
+        /*
+        columns of the half spectrum are all non-negative frequencies, so each
+        row reads a contiguous run of its quadrant row
          */
+        final FloatComplexBuffer transfer = quadrantTransfer(geometry, wavelength, distance);
+        final int[] rowOffsets = TransferFunction.quadrantRowOffsets(rows, geometry.resolutionX());
+        Parallel.forRange(plan.activePool(), rows, (start, end) -> {
+            for (int y = start; y < end; y++)
+                for (int x = 0; x < halfColumns; x++) {
+                    final int quadrantIndex = rowOffsets[y] + x;
+                    final float cosine = transfer.real[quadrantIndex];
+                    final float sine = transfer.imaginary[quadrantIndex];
+                    final int index = y * halfColumns + x;
+                    final float spectrumReal = cosineSpectrum.real[index];
+                    final float spectrumImaginary = cosineSpectrum.imaginary[index];
+                    cosineSpectrum.real[index] = spectrumReal * cosine;
+                    cosineSpectrum.imaginary[index] = spectrumImaginary * cosine;
+                    sineSpectrum.real[index] = spectrumReal * sine;
+                    sineSpectrum.imaginary[index] = spectrumImaginary * sine;
+                }
+        });
+
+        FloatFFT.c2r2D(cosineSpectrum, observedField.real, plan);
+        FloatFFT.c2r2D(sineSpectrum, observedField.imaginary, plan);
+        return observedField;
+    }
+
+    /**
+     * {@link #processFloat} with a phase mask, on a full transposed spectrum
+     */
+    private static FloatComplexBuffer processFloatComplex(
+            PropagationGeometry geometry,
+            double wavelength,
+            double distance,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity,
+            FFTPlan2D plan
+    ) {
+        final int numPoints = geometry.numPoints();
+        final FloatComplexBuffer incidentField = new FloatComplexBuffer(numPoints);
+        for (int i = 0; i < numPoints; i++) {
+            final double amplitude = amplitudeMask[i] * incidentIntensity[i];
+            incidentField.real[i] = (float) (amplitude * Math.cos(phaseMask[i]));
+            incidentField.imaginary[i] = (float) (amplitude * Math.sin(phaseMask[i]));
+        }
+
+        final FloatComplexBuffer spectrum = new FloatComplexBuffer(numPoints);
+        FloatFFT.fft2DTransposed(incidentField, spectrum, plan);
 
-        for (int y = 0; y < resolutionY; y++)
-            for (int x = 0; x < resolutionX; x++) {
-                final int shiftedX = x - resolutionX / 2;
-                final int shiftedY = y - resolutionY / 2;
-                final double pi = java.lang.Math.PI;
-                final double frequencyZ = Math.sqrt(
-                        (4.0 * pi * pi) / wavelength / wavelength -
-                                pi * pi * shiftedX * shiftedX / extentX / extentX -
-                                pi * pi * shiftedY * shiftedY / extentY / extentY
-                );
-                final double angle = frequencyZ * distance;
-                final Complex factor = new Complex(Math.cos(angle), Math.sin(angle));
-                incidentField[y * resolutionX + x] =
-                        incidentField[y * resolutionX + x]
-                                .mul(factor);
+        /*
+        the transfer function comes from the same cache as in processBuffer, laid
+        out like the transposed spectrum, and is rounded as it is read
+         */
+        final TransferFunction transfer =
+                TransferFunctionCache.shared().get(geometry.transposed(), wavelength, distance);
+        final double[] cosines = transfer.cosines;
+        final double[] sines = transfer.sines;
+        Parallel.forRange(plan.activePool(), numPoints, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                final float factorReal = (float) cosines[i];
+                final float factorImaginary = (float) sines[i];
+                final float fieldReal = spectrum.real[i];
+                final float fieldImaginary = spectrum.imaginary[i];
+                spectrum.real[i] = fieldReal * factorReal - fieldImaginary * factorImaginary;
+                spectrum.imaginary[i] = fieldReal * factorImaginary + fieldImaginary * factorReal;
             }
+        });
+
+        FloatFFT.ifft2DTransposed(spectrum, incidentField, plan);
+        return incidentField;
+    }
 
-        FFT.shiftCenter(incidentField, resolutionY, resolutionX);
-        FFT.ifft2D(incidentField, resolutionY, resolutionX);
+    /**
+     * cos and sin of k_z L over the quadrant of geometry (see {@link TransferFunction}),
+     * evaluated in double and rounded, so nothing of the grid's size is read in
+     * double. Computed per call, as {@link #processReal} does
+     */
+    private static FloatComplexBuffer quadrantTransfer(PropagationGeometry geometry, double wavelength, double distance) {
+        final Metrics.Span span = Metrics.start(Stage.TRANSFER_FUNCTION);
+        final double[] frequencyZ = TransferFunction.quadrantFrequencyZ(geometry, wavelength);
+        final double[] cosines = new double[frequencyZ.length];
+        final double[] sines = new double[frequencyZ.length];
+        TransferFunction.quadrantAngles(frequencyZ, distance, cosines, sines);
+
+        final FloatComplexBuffer transfer = new FloatComplexBuffer(frequencyZ.length);
+        for (int i = 0; i < frequencyZ.length; i++) {
+            transfer.real[i] = (float) cosines[i];
+            transfer.imaginary[i] = (float) sines[i];
+        }
+        Metrics.stop(span);
+        return transfer;
+    }
+
+    /**
+     * Same propagation as {@link #processBuffer} for a real incident field.
+     * <p>
+     * With A the half spectrum of the real field and H = e^(i k_z L), k_z only
+     * depends on k_x^2 and k_y^2, so A cos(k_z L) and A sin(k_z L) are both still
+     * Hermitian. The observed field is then
+     * c2r(A cos(k_z L)) + i c2r(A sin(k_z L)),
+     * two half-size inverses in place of one full one. The half spectrum is not
+     * shifted; the {@link TransferFunction} is tabulated in unshifted order instead.
+     */
+    private static ComplexBuffer processReal(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double distance,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] incidentIntensity
+    ) {
+        final PropagationGeometry geometry = new PropagationGeometry(extentX, extentY, resolutionX, resolutionY);
+        final AngularSpectrumPropagator propagator =
+                AngularSpectrumPropagator.forMask(incidentField(amplitudeMask, incidentIntensity), geometry);
+        final ComplexBuffer observedField = new ComplexBuffer(geometry.numPoints());
+        propagator.propagateUnrecorded(wavelength, distance, 1.0, propagator.newWorkspace(), observedField);
+        return observedField;
+    }
+
+    /**
+     * Propagates field to each of distances, handing the observed fields to planes
+     * in order as they are produced.
+     * <p>
+     * The forward transform is done once, and k_z once per bin; each plane then
+     * costs a transfer multiply and an inverse transform. Only the incident
+     * spectrum and two working fields are held however many distances are asked
+     * for. Each plane is the same as {@link #processBuffer} at that distance.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param extentX           half the x-size of the simulation
+     * @param extentY           half the y-size of the simulation
+     * @param distances         observation distances from incident
+     * @param resolutionX       the number of points used to represent the X direction
+     * @param resolutionY       the number of points used to represent the Y direction
+     * @param amplitudeMask     incident amplitude mask
+     * @param phaseMask         incident phase in radians, or null for none
+     * @param incidentIntensity incident field intensity
+     * @param planes            receives the observed field at each distance
+     */
+    public static void processStack(
+            double wavelength,
+            double extentX,
+            double extentY,
+            double[] distances,
+            int resolutionX,
+            int resolutionY,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity,
+            PlaneConsumer planes
+    ) {
+        final int numPoints = resolutionX * resolutionY;
+        checkMasks(numPoints, amplitudeMask, phaseMask, incidentIntensity);
+
+        final PropagationGeometry geometry = new PropagationGeometry(extentX, extentY, resolutionX, resolutionY);
+        if (phaseMask == null) {
+            AngularSpectrumPropagator.forMask(incidentField(amplitudeMask, incidentIntensity), geometry)
+                    .propagateStack(wavelength, distances, 1.0, planes);
+            return;
+        }
+
+        final FFTPlan2D plan = FFTPlan2D.parallel(resolutionY, resolutionX);
+        final ComplexBuffer spectrum = new ComplexBuffer(numPoints);
+        FFT.fft2DTransposed(incidentField(amplitudeMask, phaseMask, incidentIntensity), spectrum, plan);
+
+        // over the transposed geometry, as in process, so planes match it bit for bit
+        final double[] frequencyZ = TransferFunction.quadrantFrequencyZ(geometry.transposed(), wavelength);
+        final double[] cosines = new double[frequencyZ.length];
+        final double[] sines = new double[frequencyZ.length];
+        final int[] rowOffsets = TransferFunction.quadrantRowOffsets(resolutionX, resolutionY);
+        final int[] columnIndices = TransferFunction.quadrantColumnIndices(resolutionY);
+        /*
+        the inverse transform works in place on its input, so the transfer
+        multiply writes into a copy and spectrum survives for the next distance
+         */
+        final ComplexBuffer product = new ComplexBuffer(numPoints);
+        final ComplexBuffer observedField = new ComplexBuffer(numPoints);
+
+        for (int i = 0; i < distances.length; i++) {
+            TransferFunction.quadrantAngles(frequencyZ, distances[i], cosines, sines);
+
+            for (int x = 0; x < resolutionX; x++)
+                for (int y = 0; y < resolutionY; y++) {
+                    final int quadrantIndex = rowOffsets[x] + columnIndices[y];
+                    final double factorReal = cosines[quadrantIndex];
+                    final double factorImaginary = sines[quadrantIndex];
+                    final int index = x * resolutionY + y;
+                    final double fieldReal = spectrum.real[index];
+                    final double fieldImaginary = spectrum.imaginary[index];
+                    product.real[index] = fieldReal * factorReal - fieldImaginary * factorImaginary;
+                    product.imaginary[index] = fieldReal * factorImaginary + fieldImaginary * factorReal;
+                }
+
+            FFT.ifft2DTransposed(product, observedField, plan);
+            planes.accept(i, distances[i], observedField);
+        }
+    }
+
+    private static void checkMasks(
+            int numPoints,
+            double[] amplitudeMask,
+            double[] phaseMask,
+            double[] incidentIntensity
+    ) {
+        if (amplitudeMask.length != numPoints)
+            throw new IllegalArgumentException("Amplitude mask size does not match expected resolution");
+        if (phaseMask != null && phaseMask.length != numPoints)
+            throw new IllegalArgumentException("Phase mask size does not match expected resolution");
+        if (incidentIntensity.length != numPoints)
+            throw new IllegalArgumentException("Incident field intensity size does not match expected resolution");
+    }
+
+    private static double[] incidentField(double[] amplitudeMask, double[] incidentIntensity) {
+        final double[] incidentField = new double[amplitudeMask.length];
+        for (int i = 0; i < amplitudeMask.length; i++)
+            incidentField[i] = amplitudeMask[i] * incidentIntensity[i];
+        return incidentField;
+    }
 
+    private static ComplexBuffer incidentField(double[] amplitudeMask, double[] phaseMask, double[] incidentIntensity) {
+        final ComplexBuffer incidentField = new ComplexBuffer(amplitudeMask.length);
+        final double[] real = incidentField.real;
+        final double[] imaginary = incidentField.imaginary;
+        for (int i = 0; i < amplitudeMask.length; i++) {
+            final double amplitude = amplitudeMask[i] * incidentIntensity[i];
+            real[i] = amplitude * Math.cos(phaseMask[i]);
+            imaginary[i] = amplitude * Math.sin(phaseMask[i]);
+        }
         return incidentField;
     }
 }
@@ -0,0 +1,358 @@
+package fft;
+
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.PropagationEvent;
+import metrics.Stage;
+
+/**
+ * Propagates one real amplitude mask many times.
+ * <p>
+ * The incident field of a monochromatic run is the mask times a constant, so its
+ * spectrum is that constant times the mask spectrum. The half spectrum of the
+ * mask is computed once by {@link #forMask}; each {@link #propagate} call then
+ * only multiplies in the scaled transfer function and runs the inverse
+ * transforms (see {@link AngularSpectrumMethod#processBuffer} for the derivation).
+ * {@link #propagateModulus} goes straight to |U| for sweeps that only need
+ * intensities. {@link #propagateStack} does the same for many distances at one wavelength,
+ * and {@link #propagateWindow} evaluates only part of the observation plane.
+ * <p>
+ * Transfer functions come from a {@link TransferFunctionCache}, so running the
+ * same wavelengths and distance again (for another mask, say) skips evaluating
+ * them. The stored spectrum is only read after construction, so one propagator
+ * can serve several threads at once.
+ */
+public final class AngularSpectrumPropagator {
+    public final PropagationGeometry geometry;
+    private final FFTPlan2D plan;
+    private final int halfColumns;
+    /**
+     * unshifted half spectrum of the mask, rows x halfColumns
+     */
+    private final ComplexBuffer maskSpectrum;
+    private final TransferFunctionCache transferFunctions;
+    /**
+     * row y of the half spectrum reads its transfer function from this offset
+     * of a quadrant table, see {@link TransferFunction}
+     */
+    private final int[] quadrantRowOffsets;
+
+    private AngularSpectrumPropagator(
+            PropagationGeometry geometry,
+            FFTPlan2D plan,
+            ComplexBuffer maskSpectrum,
+            TransferFunctionCache transferFunctions
+    ) {
+        this.geometry = geometry;
+        this.plan = plan;
+        this.halfColumns = FFT.halfColumns(geometry.resolutionX());
+        this.maskSpectrum = maskSpectrum;
+        this.transferFunctions = transferFunctions;
+        this.quadrantRowOffsets = TransferFunction.quadrantRowOffsets(geometry.resolutionY(), geometry.resolutionX());
+    }
+
+    /**
+     * Propagator using {@link TransferFunctionCache#shared()}
+     *
+     * @param amplitudeMask incident amplitude mask, row-major resolutionY x resolutionX
+     * @param geometry      grid the mask is sampled on
+     */
+    public static AngularSpectrumPropagator forMask(double[] amplitudeMask, PropagationGeometry geometry) {
+        return forMask(amplitudeMask, geometry, TransferFunctionCache.shared());
+    }
+
+    /**
+     * @param amplitudeMask     incident amplitude mask, row-major resolutionY x resolutionX
+     * @param geometry          grid the mask is sampled on
+     * @param transferFunctions cache to take transfer functions from
+     */
+    public static AngularSpectrumPropagator forMask(
+            double[] amplitudeMask,
+            PropagationGeometry geometry,
+            TransferFunctionCache transferFunctions
+    ) {
+        if (amplitudeMask.length != geometry.numPoints())
+            throw new IllegalArgumentException("Amplitude mask size does not match expected resolution");
+
+        final FFTPlan2D plan = FFTPlan2D.parallel(geometry.resolutionY(), geometry.resolutionX());
+        final ComplexBuffer maskSpectrum =
+                new ComplexBuffer(geometry.resolutionY() * FFT.halfColumns(geometry.resolutionX()));
+        FFT.r2c2D(amplitudeMask, maskSpectrum, plan);
+
+        return new AngularSpectrumPropagator(geometry, plan, maskSpectrum, transferFunctions);
+    }
+
+    /**
+     * Propagates the mask lit by a uniform field
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param distance          observation distance from incident
+     * @param incidentIntensity incident field intensity, uniform over the mask
+     * @return observed field
+     */
+    public ComplexBuffer propagate(double wavelength, double distance, double incidentIntensity) {
+        final ComplexBuffer observedField = new ComplexBuffer(geometry.numPoints());
+        propagate(wavelength, distance, incidentIntensity, observedField);
+        return observedField;
+    }
+
+    /**
+     * Same as {@link #propagate(double, double, double)}, writing into observedField
+     */
+    public void propagate(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            ComplexBuffer observedField
+    ) {
+        propagate(wavelength, distance, incidentIntensity, newWorkspace(), observedField);
+    }
+
+    /**
+     * Same as {@link #propagate(double, double, double)}, writing into
+     * observedField and working in workspace, so nothing is allocated
+     */
+    public void propagate(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            PropagationWorkspace workspace,
+            ComplexBuffer observedField
+    ) {
+        if (observedField.length() != geometry.numPoints()) throw new IllegalArgumentException();
+
+        final PropagationEvent event =
+                new PropagationEvent(wavelength, distance, geometry.resolutionX(), geometry.resolutionY());
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+        propagateUnrecorded(wavelength, distance, incidentIntensity, workspace, observedField);
+        event.commit();
+    }
+
+    /**
+     * {@link #propagate(double, double, double, PropagationWorkspace, ComplexBuffer)}
+     * without a {@link PropagationEvent}, for callers that record their own
+     */
+    void propagateUnrecorded(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            PropagationWorkspace workspace,
+            ComplexBuffer observedField
+    ) {
+        multiplyTransfer(wavelength, distance, incidentIntensity, workspace);
+        FFT.c2r2D(workspace.cosineSpectrum, observedField.real, plan);
+        FFT.c2r2D(workspace.sineSpectrum, observedField.imaginary, plan);
+    }
+
+    /**
+     * Propagates the mask lit by a uniform field and writes |U| of the observed
+     * field into modulus, without ever holding the complex field: the real part
+     * is inverted straight into modulus, and the inverse of the imaginary part
+     * replaces it with the modulus as it writes each row.
+     * <p>
+     * The transfer function is evaluated over a quadrant in workspace rather
+     * than taken from the cache, which costs the same as a cache miss without
+     * expanding (and allocating) the full table; a sweep rarely revisits a
+     * wavelength before the cache has evicted it anyway. With a workspace kept
+     * across calls nothing is allocated. Results are the same as
+     * {@link #propagate} bit for bit.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param distance          observation distance from incident
+     * @param incidentIntensity incident field intensity, uniform over the mask
+     * @param workspace         from {@link #newWorkspace}
+     * @param modulus           receives |U|, row-major
+     */
+    public void propagateModulus(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            PropagationWorkspace workspace,
+            double[] modulus
+    ) {
+        if (modulus.length != geometry.numPoints()) throw new IllegalArgumentException();
+
+        final PropagationEvent event =
+                new PropagationEvent(wavelength, distance, geometry.resolutionX(), geometry.resolutionY());
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+        if (workspace.length() != maskSpectrum.length()) throw new IllegalArgumentException();
+
+        final Metrics.Span span = Metrics.start(Stage.TRANSFER_FUNCTION);
+        TransferFunction.quadrantFrequencyZ(geometry, wavelength, workspace.quadrantFrequencyZ);
+        TransferFunction.quadrantAngles(
+                workspace.quadrantFrequencyZ, distance,
+                workspace.quadrantCosines, workspace.quadrantSines
+        );
+        Metrics.stop(span);
+        multiplyQuadrant(workspace.quadrantCosines, workspace.quadrantSines, incidentIntensity, workspace);
+        FFT.c2r2D(workspace.cosineSpectrum, modulus, plan);
+        FFT.c2r2DModulus(workspace.sineSpectrum, modulus, modulus, plan);
+        event.commit();
+    }
+
+    /**
+     * Working memory for the calls that take one, sized for this propagator
+     */
+    public PropagationWorkspace newWorkspace() {
+        return new PropagationWorkspace(maskSpectrum.length(), TransferFunction.quadrantLength(geometry));
+    }
+
+    /**
+     * Fills workspace with the mask spectrum times incidentIntensity times the
+     * cos and sin of k_z L
+     */
+    private void multiplyTransfer(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            PropagationWorkspace workspace
+    ) {
+        if (workspace.length() != maskSpectrum.length()) throw new IllegalArgumentException();
+
+        final int resolutionX = geometry.resolutionX();
+        final int resolutionY = geometry.resolutionY();
+        final TransferFunction transfer = transferFunctions.get(geometry, wavelength, distance);
+        final ComplexBuffer cosineSpectrum = workspace.cosineSpectrum;
+        final ComplexBuffer sineSpectrum = workspace.sineSpectrum;
+
+        for (int y = 0; y < resolutionY; y++)
+            ComplexKernels.multiplyCosSin(
+                    maskSpectrum.real, maskSpectrum.imaginary, y * halfColumns,
+                    transfer.cosines, transfer.sines, y * resolutionX, incidentIntensity,
+                    cosineSpectrum.real, cosineSpectrum.imaginary,
+                    sineSpectrum.real, sineSpectrum.imaginary, y * halfColumns,
+                    halfColumns
+            );
+    }
+
+    /**
+     * Propagates the mask lit by a uniform field, evaluating the observed field
+     * only over window. The inverse transform is replaced by a {@link ChirpZ}
+     * along each axis, so the window may be sampled much more finely than the
+     * grid without growing the grid: the result is the band-limited field the
+     * grid's spectrum describes, at the window's positions.
+     * <p>
+     * The row pass still reads the whole spectrum, but after it only the
+     * window's columns are left, so the work beyond building the spectrum is
+     * rows x (columns + window columns) plus window columns x (rows + window rows),
+     * times a log.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param distance          observation distance from incident
+     * @param incidentIntensity incident field intensity, uniform over the mask
+     * @param window            where to evaluate the observed field
+     * @return observed field, row-major window.resolutionY x window.resolutionX
+     */
+    public ComplexBuffer propagateWindow(
+            double wavelength,
+            double distance,
+            double incidentIntensity,
+            ObservationWindow window
+    ) {
+        final PropagationEvent event =
+                new PropagationEvent(wavelength, distance, window.resolutionX(), window.resolutionY());
+        event.begin();
+        Metrics.count(Counter.PROPAGATIONS);
+
+        final int resolutionX = geometry.resolutionX();
+        final int resolutionY = geometry.resolutionY();
+        final TransferFunction transfer = transferFunctions.get(geometry, wavelength, distance);
+        final ComplexBuffer spectrum = new ComplexBuffer(geometry.numPoints());
+
+        /*
+        the mask is real, so the columns the half spectrum leaves out are
+        S(k_y, k_x) = conj(S(-k_y, -k_x))
+         */
+        for (int y = 0; y < resolutionY; y++) {
+            final int mirrorY = y == 0 ? 0 : resolutionY - y;
+            for (int x = 0; x < resolutionX; x++) {
+                final double valueReal;
+                final double valueImaginary;
+                if (x < halfColumns) {
+                    valueReal = maskSpectrum.real[y * halfColumns + x];
+                    valueImaginary = maskSpectrum.imaginary[y * halfColumns + x];
+                } else {
+                    valueReal = maskSpectrum.real[mirrorY * halfColumns + resolutionX - x];
+                    valueImaginary = -maskSpectrum.imaginary[mirrorY * halfColumns + resolutionX - x];
+                }
+
+                final int index = y * resolutionX + x;
+                final double factorReal = incidentIntensity * transfer.cosines[index];
+                final double factorImaginary = incidentIntensity * transfer.sines[index];
+                spectrum.real[index] = valueReal * factorReal - valueImaginary * factorImaginary;
+                spectrum.imaginary[index] = valueReal * factorImaginary + valueImaginary * factorReal;
+            }
+        }
+
+        final Metrics.Span span = Metrics.start(Stage.INVERSE_FFT);
+        final ComplexBuffer observedField = ChirpZ.inverse2D(
+                spectrum, resolutionY, resolutionX,
+                window.alongX(geometry), window.alongY(geometry),
+                plan.activePool()
+        );
+        Metrics.stop(span);
+        event.commit();
+        return observedField;
+    }
+
+    /**
+     * Propagates the mask lit by a uniform field to each of distances in turn.
+     * k_z is evaluated once for the wavelength, so each plane only costs the
+     * cos/sin of k_z L over a quadrant, the multiply and the two inverses.
+     *
+     * @param wavelength        wavelength of monochromatic light
+     * @param distances         observation distances from incident
+     * @param incidentIntensity incident field intensity, uniform over the mask
+     * @param planes            receives the observed field at each distance, in order
+     */
+    public void propagateStack(
+            double wavelength,
+            double[] distances,
+            double incidentIntensity,
+            PlaneConsumer planes
+    ) {
+        final PropagationWorkspace workspace = newWorkspace();
+        TransferFunction.quadrantFrequencyZ(geometry, wavelength, workspace.quadrantFrequencyZ);
+        final ComplexBuffer observedField = new ComplexBuffer(geometry.numPoints());
+
+        for (int i = 0; i < distances.length; i++) {
+            TransferFunction.quadrantAngles(
+                    workspace.quadrantFrequencyZ, distances[i],
+                    workspace.quadrantCosines, workspace.quadrantSines
+            );
+            multiplyQuadrant(workspace.quadrantCosines, workspace.quadrantSines, incidentIntensity, workspace);
+
+            FFT.c2r2D(workspace.cosineSpectrum, observedField.real, plan);
+            FFT.c2r2D(workspace.sineSpectrum, observedField.imaginary, plan);
+            planes.accept(i, distances[i], observedField);
+        }
+    }
+
+    /**
+     * Same as multiplyTransfer, with cos and sin of k_z L given over a quadrant
+     */
+    private void multiplyQuadrant(
+            double[] quadrantCosines,
+            double[] quadrantSines,
+            double incidentIntensity,
+            PropagationWorkspace workspace
+    ) {
+        final ComplexBuffer cosineSpectrum = workspace.cosineSpectrum;
+        final ComplexBuffer sineSpectrum = workspace.sineSpectrum;
+
+        /*
+        columns of the half spectrum are all non-negative frequencies, so each
+        row reads a contiguous run of its quadrant row
+         */
+        for (int y = 0; y < geometry.resolutionY(); y++)
+            ComplexKernels.multiplyCosSin(
+                    maskSpectrum.real, maskSpectrum.imaginary, y * halfColumns,
+                    quadrantCosines, quadrantSines, quadrantRowOffsets[y], incidentIntensity,
+                    cosineSpectrum.real, cosineSpectrum.imaginary,
+                    sineSpectrum.real, sineSpectrum.imaginary, y * halfColumns,
+                    halfColumns
+            );
+    }
+}
@@ -0,0 +1,187 @@
+package fft;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Inverse DFT of a spectrum evaluated at evenly spaced fractional sample
+ * positions, i.e. a chirp-z transform along the unit circle.
+ * <p>
+ * For a length n spectrum x_k in the unshifted order the FFT produces, with f_k
+ * its centered frequency (see {@link TransferFunction}), this computes
+ * <p>
+ * y_m = sum_k x_k e^(2 pi i f_k t_m / n), t_m = start + m step, m in [0, outputLength)
+ * <p>
+ * which for start 0, step 1 and outputLength n is the unnormalized inverse FFT.
+ * Any other start and step resample the band-limited signal the spectrum
+ * describes, so a small step zooms into part of it. Like {@link FFTPlan}'s
+ * Bluestein kernel the sum is rewritten as a convolution, here of length
+ * n + outputLength - 1 rounded up to a power of two.
+ */
+public final class ChirpZ {
+    public final int inputLength;
+    public final int outputLength;
+    private final FFTPlan convolutionPlan;
+    /**
+     * e^(i (2 pi j start / n + phi j^2 / 2)) for the centered input index j
+     */
+    private final double[] inputCosines;
+    private final double[] inputSines;
+    /**
+     * FFT of e^(-i phi d^2 / 2), d in (-n, outputLength), wrapped around
+     */
+    private final ComplexBuffer kernelSpectrum;
+    /**
+     * e^(i (phi m^2 / 2 - 2 pi c t_m / n)), divided by the convolution length
+     */
+    private final double[] outputCosines;
+    private final double[] outputSines;
+    private final ThreadLocal<ComplexBuffer> scratch;
+
+    /*
+    with j = (k + c) mod n, c = n / 2, the centered frequency is f = j - c, and
+    with phi = 2 pi step / n and 2 j m = j^2 + m^2 - (m - j)^2,
+    y_m = e^(-2 pi i c t_m / n) sum_j x_j e^(2 pi i j start / n) e^(i phi j m)
+        = e^(-2 pi i c t_m / n) e^(i phi m^2 / 2)
+          sum_j (x_j e^(2 pi i j start / n) e^(i phi j^2 / 2)) e^(-i phi (m - j)^2 / 2)
+     */
+    private ChirpZ(int inputLength, int outputLength, double start, double step) {
+        this.inputLength = inputLength;
+        this.outputLength = outputLength;
+
+        final int convolutionLength = Math.nextPowerOfTwo(inputLength + outputLength - 1);
+        convolutionPlan = FFTPlan.of(convolutionLength);
+        final double phi = 2.0 * java.lang.Math.PI * step / inputLength;
+        final int center = inputLength / 2;
+
+        inputCosines = new double[inputLength];
+        inputSines = new double[inputLength];
+        for (int j = 0; j < inputLength; j++) {
+            final double angle = 2.0 * java.lang.Math.PI * j * start / inputLength + 0.5 * phi * j * j;
+            inputCosines[j] = java.lang.Math.cos(angle);
+            inputSines[j] = java.lang.Math.sin(angle);
+        }
+
+        kernelSpectrum = new ComplexBuffer(convolutionLength);
+        for (int d = 0; d < java.lang.Math.max(inputLength, outputLength); d++) {
+            final double angle = -0.5 * phi * d * d;
+            if (d < outputLength) {
+                kernelSpectrum.real[d] = java.lang.Math.cos(angle);
+                kernelSpectrum.imaginary[d] = java.lang.Math.sin(angle);
+            }
+            if (d > 0 && d < inputLength) {
+                kernelSpectrum.real[convolutionLength - d] = java.lang.Math.cos(angle);
+                kernelSpectrum.imaginary[convolutionLength - d] = java.lang.Math.sin(angle);
+            }
+        }
+        convolutionPlan.transform(kernelSpectrum.real, kernelSpectrum.imaginary, 0, 1, -1.0);
+
+        outputCosines = new double[outputLength];
+        outputSines = new double[outputLength];
+        for (int m = 0; m < outputLength; m++) {
+            final double position = start + m * step;
+            final double angle = 0.5 * phi * m * m - 2.0 * java.lang.Math.PI * center * position / inputLength;
+            outputCosines[m] = java.lang.Math.cos(angle) / convolutionLength;
+            outputSines[m] = java.lang.Math.sin(angle) / convolutionLength;
+        }
+
+        scratch = ThreadLocal.withInitial(() -> new ComplexBuffer(convolutionLength));
+    }
+
+    /**
+     * @param inputLength  length of the spectrum
+     * @param outputLength number of positions to evaluate
+     * @param start        first position, in samples of the inputLength grid
+     * @param step         spacing of the positions, in the same samples
+     */
+    public static ChirpZ of(int inputLength, int outputLength, double start, double step) {
+        if (inputLength <= 0 || outputLength <= 0) throw new IllegalArgumentException();
+
+        return new ChirpZ(inputLength, outputLength, start, step);
+    }
+
+    /**
+     * Reads inputLength values from real and imaginary at offset, stride apart,
+     * and writes outputLength values to outReal and outImaginary at outOffset,
+     * outStride apart. Does not perform normalization.
+     */
+    public void transform(
+            double[] real, double[] imaginary, int offset, int stride,
+            double[] outReal, double[] outImaginary, int outOffset, int outStride
+    ) {
+        final int convolutionLength = convolutionPlan.length;
+        final int center = inputLength / 2;
+        final ComplexBuffer work = scratch.get();
+        final double[] workReal = work.real;
+        final double[] workImaginary = work.imaginary;
+
+        for (int k = 0; k < inputLength; k++) {
+            final int j = k + center < inputLength ? k + center : k + center - inputLength;
+            final double valueReal = real[offset + stride * k];
+            final double valueImaginary = imaginary[offset + stride * k];
+            workReal[j] = valueReal * inputCosines[j] - valueImaginary * inputSines[j];
+            workImaginary[j] = valueReal * inputSines[j] + valueImaginary * inputCosines[j];
+        }
+        Arrays.fill(workReal, inputLength, convolutionLength, 0.0);
+        Arrays.fill(workImaginary, inputLength, convolutionLength, 0.0);
+
+        convolutionPlan.transform(workReal, workImaginary, 0, 1, -1.0);
+        ComplexKernels.multiply(
+                workReal, workImaginary,
+                kernelSpectrum.real, kernelSpectrum.imaginary,
+                0, convolutionLength
+        );
+        convolutionPlan.transform(workReal, workImaginary, 0, 1, 1.0);
+
+        for (int m = 0; m < outputLength; m++) {
+            final double valueReal = workReal[m];
+            final double valueImaginary = workImaginary[m];
+            outReal[outOffset + outStride * m] = valueReal * outputCosines[m] - valueImaginary * outputSines[m];
+            outImaginary[outOffset + outStride * m] = valueReal * outputSines[m] + valueImaginary * outputCosines[m];
+        }
+    }
+
+    /**
+     * Normalized 2D inverse of a full, unshifted row-major rows x columns
+     * spectrum, evaluated on the positions of alongX in x and alongY in y.
+     * Rows are transformed first, into a transposed intermediate of
+     * alongX.outputLength x rows, so both passes read contiguous lines.
+     *
+     * @return row-major alongY.outputLength x alongX.outputLength field
+     */
+    static ComplexBuffer inverse2D(
+            ComplexBuffer spectrum, int rows, int columns,
+            ChirpZ alongX, ChirpZ alongY,
+            ForkJoinPool pool
+    ) {
+        if (spectrum.length() != rows * columns) throw new IllegalArgumentException();
+        if (alongX.inputLength != columns || alongY.inputLength != rows) throw new IllegalArgumentException();
+
+        final int outputColumns = alongX.outputLength;
+        final int outputRows = alongY.outputLength;
+        final ComplexBuffer transposed = new ComplexBuffer(outputColumns * rows);
+        Parallel.forRange(pool, rows, (start, end) -> {
+            for (int row = start; row < end; row++)
+                alongX.transform(
+                        spectrum.real, spectrum.imaginary, row * columns, 1,
+                        transposed.real, transposed.imaginary, row, rows
+                );
+        });
+
+        final ComplexBuffer field = new ComplexBuffer(outputRows * outputColumns);
+        final double normalization = 1.0 / ((double) rows * columns);
+        Parallel.forRange(pool, outputColumns, (start, end) -> {
+            for (int column = start; column < end; column++) {
+                alongY.transform(
+                        transposed.real, transposed.imaginary, column * rows, 1,
+                        field.real, field.imaginary, column, outputColumns
+                );
+                for (int row = 0; row < outputRows; row++) {
+                    field.real[row * outputColumns + column] *= normalization;
+                    field.imaginary[row * outputColumns + column] *= normalization;
+                }
+            }
+        });
+        return field;
+    }
+}
@@ -0,0 +1,97 @@
+package fft;
+
+/**
+ * Array of complex numbers stored as two primitive arrays, one for the real
+ * parts and one for the imaginary parts.
+ * <p>
+ * The FFT kernels work on these directly, so no {@link Complex} is created
+ * per butterfly.
+ */
+public final class ComplexBuffer {
+    public final double[] real;
+    public final double[] imaginary;
+
+    public ComplexBuffer(int length) {
+        this(new double[length], new double[length]);
+    }
+
+    public ComplexBuffer(double[] real, double[] imaginary) {
+        if (real.length != imaginary.length)
+            throw new IllegalArgumentException("Real and imaginary parts differ in length");
+
+        this.real = real;
+        this.imaginary = imaginary;
+    }
+
+    public static ComplexBuffer fromComplex(Complex[] data) {
+        final ComplexBuffer buffer = new ComplexBuffer(data.length);
+        buffer.copyFrom(data);
+        return buffer;
+    }
+
+    public int length() {
+        return real.length;
+    }
+
+    public Complex get(int index) {
+        return new Complex(real[index], imaginary[index]);
+    }
+
+    public void set(int index, Complex value) {
+        real[index] = value.real();
+        imaginary[index] = value.imaginary();
+    }
+
+    public double modulus(int index) {
+        final double re = real[index];
+        final double im = imaginary[index];
+        return java.lang.Math.sqrt(re * re + im * im);
+    }
+
+    public void copyFrom(Complex[] data) {
+        if (data.length != length()) throw new IllegalArgumentException();
+
+        for (int i = 0; i < data.length; i++) {
+            real[i] = data[i].real();
+            imaginary[i] = data[i].imaginary();
+        }
+    }
+
+    public void copyTo(Complex[] data) {
+        if (data.length != length()) throw new IllegalArgumentException();
+
+        for (int i = 0; i < data.length; i++)
+            data[i] = new Complex(real[i], imaginary[i]);
+    }
+
+    public Complex[] toComplex() {
+        final Complex[] data = new Complex[length()];
+        copyTo(data);
+        return data;
+    }
+
+    public void conjugate() {
+        for (int i = 0; i < imaginary.length; i++)
+            imaginary[i] = -imaginary[i];
+    }
+
+    public void scale(double factor) {
+        for (int i = 0; i < real.length; i++) {
+            real[i] *= factor;
+            imaginary[i] *= factor;
+        }
+    }
+
+    /**
+     * Writes |z| of every element into {@code out}
+     */
+    public void modulus(double[] out) {
+        if (out.length != length()) throw new IllegalArgumentException();
+
+        for (int i = 0; i < out.length; i++) {
+            final double re = real[i];
+            final double im = imaginary[i];
+            out[i] = java.lang.Math.sqrt(re * re + im * im);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package fft;
+
+/**
+ * Elementwise complex arithmetic over split re/im arrays.
+ * <p>
+ * When the jdk.incubator.vector module is present (run with
+ * --add-modules jdk.incubator.vector) and the preferred species holds more than
+ * one double, the bulk of each range runs on {@link VectorKernels} and the
+ * scalar loops below only finish the tail; otherwise the scalar loops do it all.
+ * Both evaluate the same expressions in the same order without fused
+ * multiply-adds, so the results are identical either way. Setting the system
+ * property fft.vector to false forces the scalar loops.
+ * <p>
+ * Each kernel also has a float[] overload for {@link FloatFFT}.
+ */
+final class ComplexKernels {
+    static final boolean VECTORIZED = vectorSupported();
+    /**
+     * doubles per vector, 1 when not {@link #VECTORIZED}
+     */
+    static final int LANES = VECTORIZED ? VectorKernels.lanes() : 1;
+    /**
+     * floats per vector, 1 when not {@link #VECTORIZED}
+     */
+    static final int FLOAT_LANES = VECTORIZED ? VectorKernels.floatLanes() : 1;
+
+    private ComplexKernels() {
+    }
+
+    private static boolean vectorSupported() {
+        if (!Boolean.parseBoolean(System.getProperty("fft.vector", "true"))) return false;
+        // checked first so VectorKernels is never loaded without the module
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return false;
+        return VectorKernels.lanes() > 1;
+    }
+
+    /**
+     * values[i] = -values[i] for i in [from, to)
+     */
+    static void negate(double[] values, int from, int to) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.negate(values, from, to);
+
+        for (; i < to; i++)
+            values[i] = -values[i];
+    }
+
+    /**
+     * Scales by factor and conjugates, for i in [from, to)
+     */
+    static void scaleConjugate(double[] real, double[] imaginary, int from, int to, double factor) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.scaleConjugate(real, imaginary, from, to, factor);
+
+        for (; i < to; i++) {
+            real[i] = real[i] * factor;
+            imaginary[i] = -(imaginary[i] * factor);
+        }
+    }
+
+    /**
+     * value[i] *= factor[i] for i in [from, to)
+     */
+    static void multiply(
+            double[] real, double[] imaginary,
+            double[] factorReal, double[] factorImaginary,
+            int from, int to
+    ) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.multiply(real, imaginary, factorReal, factorImaginary, from, to);
+
+        for (; i < to; i++) {
+            final double valueReal = real[i];
+            final double valueImaginary = imaginary[i];
+            real[i] = valueReal * factorReal[i] - valueImaginary * factorImaginary[i];
+            imaginary[i] = valueReal * factorImaginary[i] + valueImaginary * factorReal[i];
+        }
+    }
+
+    /**
+     * For count values from sourceOffset, writes source * (scale cosines[k]) to the
+     * cosine arrays and source * (scale sines[k]) to the sine arrays, with k
+     * running from factorOffset and the targets from targetOffset
+     */
+    static void multiplyCosSin(
+            double[] sourceReal, double[] sourceImaginary, int sourceOffset,
+            double[] cosines, double[] sines, int factorOffset, double scale,
+            double[] cosineReal, double[] cosineImaginary,
+            double[] sineReal, double[] sineImaginary, int targetOffset,
+            int count
+    ) {
+        int i = 0;
+        if (VECTORIZED)
+            i = VectorKernels.multiplyCosSin(
+                    sourceReal, sourceImaginary, sourceOffset,
+                    cosines, sines, factorOffset, scale,
+                    cosineReal, cosineImaginary,
+                    sineReal, sineImaginary, targetOffset,
+                    count
+            );
+
+        for (; i < count; i++) {
+            final double cosine = scale * cosines[factorOffset + i];
+            final double sine = scale * sines[factorOffset + i];
+            final double valueReal = sourceReal[sourceOffset + i];
+            final double valueImaginary = sourceImaginary[sourceOffset + i];
+            cosineReal[targetOffset + i] = valueReal * cosine;
+            cosineImaginary[targetOffset + i] = valueImaginary * cosine;
+            sineReal[targetOffset + i] = valueReal * sine;
+            sineImaginary[targetOffset + i] = valueImaginary * sine;
+        }
+    }
+
+    /**
+     * count radix-2 decimation in frequency butterflies on contiguous halves:
+     * even + odd goes to even, (even - odd) W to odd, with
+     * W = cosines[k] + i sign sines[k] and k running from twiddleOffset
+     */
+    static void butterflies(
+            double[] real, double[] imaginary,
+            int evenOffset, int oddOffset,
+            double[] cosines, double[] sines, int twiddleOffset,
+            int count, double sign
+    ) {
+        int j = 0;
+        if (VECTORIZED)
+            j = VectorKernels.butterflies(real, imaginary, evenOffset, oddOffset, cosines, sines, twiddleOffset, count, sign);
+
+        for (; j < count; j++) {
+            final double factorReal = cosines[twiddleOffset + j];
+            final double factorImaginary = sign * sines[twiddleOffset + j];
+
+            final int evenIndex = evenOffset + j;
+            final int oddIndex = oddOffset + j;
+            final double evenReal = real[evenIndex];
+            final double evenImaginary = imaginary[evenIndex];
+            final double oddReal = real[oddIndex];
+            final double oddImaginary = imaginary[oddIndex];
+
+            real[evenIndex] = evenReal + oddReal;
+            imaginary[evenIndex] = evenImaginary + oddImaginary;
+
+            final double differenceReal = evenReal - oddReal;
+            final double differenceImaginary = evenImaginary - oddImaginary;
+            real[oddIndex] = differenceReal * factorReal - differenceImaginary * factorImaginary;
+            imaginary[oddIndex] = differenceReal * factorImaginary + differenceImaginary * factorReal;
+        }
+    }
+
+    /**
+     * count radix-4 butterflies of {@link FFTPlan}'s RADIX_4 kernel on a
+     * contiguous chunk starting at offset, j running from 0. W^j, W^(2j) and
+     * W^(3j) are cosines/sines at twiddleOffset + j, one twiddleBlock further
+     * and two twiddleBlocks further, with W = cos + i sign sin.
+     */
+    static void butterflies4(
+            double[] real, double[] imaginary,
+            int offset, int quarter,
+            double[] cosines, double[] sines, int twiddleOffset, int twiddleBlock,
+            int count, double sign
+    ) {
+        int j = 0;
+        if (VECTORIZED)
+            j = VectorKernels.butterflies4(
+                    real, imaginary, offset, quarter,
+                    cosines, sines, twiddleOffset, twiddleBlock,
+                    count, sign
+            );
+
+        for (; j < count; j++) {
+            final int twiddle = twiddleOffset + j;
+            final int index = offset + j;
+            final int index1 = index + quarter;
+            final int index2 = index1 + quarter;
+            final int index3 = index2 + quarter;
+
+            final double sumReal = real[index] + real[index2];
+            final double sumImaginary = imaginary[index] + imaginary[index2];
+            final double differenceReal = real[index] - real[index2];
+            final double differenceImaginary = imaginary[index] - imaginary[index2];
+            final double oddSumReal = real[index1] + real[index3];
+            final double oddSumImaginary = imaginary[index1] + imaginary[index3];
+            final double rotatedReal = -sign * (imaginary[index1] - imaginary[index3]);
+            final double rotatedImaginary = sign * (real[index1] - real[index3]);
+
+            real[index] = sumReal + oddSumReal;
+            imaginary[index] = sumImaginary + oddSumImaginary;
+
+            double factorReal = cosines[twiddle + twiddleBlock];
+            double factorImaginary = sign * sines[twiddle + twiddleBlock];
+            double valueReal = sumReal - oddSumReal;
+            double valueImaginary = sumImaginary - oddSumImaginary;
+            real[index1] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index1] = valueReal * factorImaginary + valueImaginary * factorReal;
+
+            factorReal = cosines[twiddle];
+            factorImaginary = sign * sines[twiddle];
+            valueReal = differenceReal + rotatedReal;
+            valueImaginary = differenceImaginary + rotatedImaginary;
+            real[index2] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index2] = valueReal * factorImaginary + valueImaginary * factorReal;
+
+            factorReal = cosines[twiddle + 2 * twiddleBlock];
+            factorImaginary = sign * sines[twiddle + 2 * twiddleBlock];
+            valueReal = differenceReal - rotatedReal;
+            valueImaginary = differenceImaginary - rotatedImaginary;
+            real[index3] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index3] = valueReal * factorImaginary + valueImaginary * factorReal;
+        }
+    }
+
+    static void negate(float[] values, int from, int to) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.negate(values, from, to);
+
+        for (; i < to; i++)
+            values[i] = -values[i];
+    }
+
+    static void scaleConjugate(float[] real, float[] imaginary, int from, int to, float factor) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.scaleConjugate(real, imaginary, from, to, factor);
+
+        for (; i < to; i++) {
+            real[i] = real[i] * factor;
+            imaginary[i] = -(imaginary[i] * factor);
+        }
+    }
+
+    static void multiply(
+            float[] real, float[] imaginary,
+            float[] factorReal, float[] factorImaginary,
+            int from, int to
+    ) {
+        int i = from;
+        if (VECTORIZED) i = VectorKernels.multiply(real, imaginary, factorReal, factorImaginary, from, to);
+
+        for (; i < to; i++) {
+            final float valueReal = real[i];
+            final float valueImaginary = imaginary[i];
+            real[i] = valueReal * factorReal[i] - valueImaginary * factorImaginary[i];
+            imaginary[i] = valueReal * factorImaginary[i] + valueImaginary * factorReal[i];
+        }
+    }
+
+    static void butterflies4(
+            float[] real, float[] imaginary,
+            int offset, int quarter,
+            float[] cosines, float[] sines, int twiddleOffset, int twiddleBlock,
+            int count, float sign
+    ) {
+        int j = 0;
+        if (VECTORIZED)
+            j = VectorKernels.butterflies4(
+                    real, imaginary, offset, quarter,
+                    cosines, sines, twiddleOffset, twiddleBlock,
+                    count, sign
+            );
+
+        for (; j < count; j++) {
+            final int twiddle = twiddleOffset + j;
+            final int index = offset + j;
+            final int index1 = index + quarter;
+            final int index2 = index1 + quarter;
+            final int index3 = index2 + quarter;
+
+            final float sumReal = real[index] + real[index2];
+            final float sumImaginary = imaginary[index] + imaginary[index2];
+            final float differenceReal = real[index] - real[index2];
+            final float differenceImaginary = imaginary[index] - imaginary[index2];
+            final float oddSumReal = real[index1] + real[index3];
+            final float oddSumImaginary = imaginary[index1] + imaginary[index3];
+            final float rotatedReal = -sign * (imaginary[index1] - imaginary[index3]);
+            final float rotatedImaginary = sign * (real[index1] - real[index3]);
+
+            real[index] = sumReal + oddSumReal;
+            imaginary[index] = sumImaginary + oddSumImaginary;
+
+            float factorReal = cosines[twiddle + twiddleBlock];
+            float factorImaginary = sign * sines[twiddle + twiddleBlock];
+            float valueReal = sumReal - oddSumReal;
+            float valueImaginary = sumImaginary - oddSumImaginary;
+            real[index1] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index1] = valueReal * factorImaginary + valueImaginary * factorReal;
+
+            factorReal = cosines[twiddle];
+            factorImaginary = sign * sines[twiddle];
+            valueReal = differenceReal + rotatedReal;
+            valueImaginary = differenceImaginary + rotatedImaginary;
+            real[index2] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index2] = valueReal * factorImaginary + valueImaginary * factorReal;
+
+            factorReal = cosines[twiddle + 2 * twiddleBlock];
+            factorImaginary = sign * sines[twiddle + 2 * twiddleBlock];
+            valueReal = differenceReal - rotatedReal;
+            valueImaginary = differenceImaginary - rotatedImaginary;
+            real[index3] = valueReal * factorReal - valueImaginary * factorImaginary;
+            imaginary[index3] = valueReal * factorImaginary + valueImaginary * factorReal;
+        }
+    }
+}
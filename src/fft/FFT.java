@@ -1,104 +1,415 @@
 package fft;
 
+import metrics.FFTEvent;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 public class FFT {
+    /**
+     * Number of adjacent columns gathered together in the column pass
+     */
+    private static final int COLUMN_BLOCK = 16;
+    /**
+     * Side of the square tiles used by {@link #transpose}
+     */
+    private static final int TRANSPOSE_TILE = 32;
+
     public static void fft(Complex[] data) {
-        final int length = data.length;
-        if (length == 1) return;
-        if (!Math.isPowerOfTwo(length)) throw new IllegalArgumentException();
+        final ComplexBuffer buffer = ComplexBuffer.fromComplex(data);
+        fft(buffer);
+        buffer.copyTo(data);
+    }
 
-        for (int chunk = length; chunk >= 2; chunk /= 2) {
-            final int half = chunk / 2;
-            final double angle = 2.0 * java.lang.Math.PI / chunk;
-            final Complex factorStep = new Complex(java.lang.Math.cos(angle), java.lang.Math.sin(angle));
+    /**
+     * In-place transform with the positive exponent, c_k = sum_j y_j e^(2 pi i j k / n)
+     * <p>
+     * Does not perform normalization
+     *
+     * @param data
+     */
+    public static void fft(ComplexBuffer data) {
+        final int length = data.length();
+        if (length == 0) throw new IllegalArgumentException();
 
-            for (int i = 0; i < length; i += chunk) {
-                Complex factor = new Complex(1.0, 0.0);
-                for (int j = 0; j < half; j++) {
-                    final Complex even = data[i + j];
-                    final Complex odd = data[i + j + half];
+        FFTPlan.of(length).transform(data.real, data.imaginary, 0, 1, 1.0);
+    }
 
-                    data[i + j] = even.add(odd);
-                    data[i + j + half] = even.sub(odd).mul(factor);
+    /**
+     * Expects row-major data
+     *
+     * @param data
+     * @param rows
+     * @param columns
+     */
+    public static void fft2D(Complex[] data, int rows, int columns) {
+        final ComplexBuffer buffer = ComplexBuffer.fromComplex(data);
+        fft2D(buffer, rows, columns);
+        buffer.copyTo(data);
+    }
+
+    /**
+     * Expects row-major data
+     *
+     * @param data
+     * @param rows
+     * @param columns
+     */
+    public static void fft2D(ComplexBuffer data, int rows, int columns) {
+        fft2D(data, FFTPlan2D.of(rows, columns));
+    }
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void fft2D(ComplexBuffer data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != rows * columns) throw new IllegalArgumentException();
+
+        final FFTEvent event = new FFTEvent(rows, columns, false, false);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.FORWARD_FFT);
+        forward2D(data, plan);
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    private static void forward2D(ComplexBuffer data, FFTPlan2D plan) {
+        final ForkJoinPool pool = plan.activePool();
+        rowPass(data.real, data.imaginary, plan.rowPlan, plan.rows, -1.0, pool);
+        columnPass(data.real, data.imaginary, plan.columnPlan, plan.columns, -1.0, pool);
+    }
+
+    /**
+     * Forward 2D transform that leaves the spectrum transposed, i.e. row-major
+     * plan.columns x plan.rows, so entry (k_y, k_x) is at k_x * rows + k_y.
+     * <p>
+     * Both passes run over contiguous rows, and there is a single transpose in
+     * between instead of the gather and scatter of the column pass. Pair with
+     * {@link #ifft2DTransposed} to skip the transpose back.
+     *
+     * @param data       row-major input, overwritten with intermediate values
+     * @param transposed receives the transposed spectrum
+     * @param plan
+     */
+    public static void fft2DTransposed(ComplexBuffer data, ComplexBuffer transposed, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != rows * columns) throw new IllegalArgumentException();
+        if (transposed.length() != rows * columns) throw new IllegalArgumentException();
 
-                    factor = factor.mul(factorStep);
+        final FFTEvent event = new FFTEvent(rows, columns, false, false);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.FORWARD_FFT);
+        final ForkJoinPool pool = plan.activePool();
+        rowPass(data.real, data.imaginary, plan.rowPlan, rows, -1.0, pool);
+        transpose(data, transposed, rows, columns, pool);
+        rowPass(transposed.real, transposed.imaginary, plan.columnPlan, columns, -1.0, pool);
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    /**
+     * Transforms each of the lines contiguous rows of data with plan, using the given exponent sign
+     */
+    private static void rowPass(
+            double[] real, double[] imaginary,
+            FFTPlan plan, int lines, double sign,
+            ForkJoinPool pool
+    ) {
+        final int length = plan.length;
+        Parallel.forRange(pool, lines, (start, end) -> {
+            for (int line = start; line < end; line++)
+                plan.transform(real, imaginary, line * length, 1, sign);
+        });
+    }
+
+    /**
+     * Transforms every column of a row-major grid with lines columns, using the given exponent sign.
+     * <p>
+     * Strided butterflies touch a new cache line (and, on wide grids, a new page)
+     * for every element, so columns are handled COLUMN_BLOCK at a time: the block is
+     * gathered into contiguous scratch, transformed there and scattered back. Each
+     * gather reads COLUMN_BLOCK adjacent values from a row.
+     */
+    private static void columnPass(
+            double[] real, double[] imaginary,
+            FFTPlan plan, int lines, double sign,
+            ForkJoinPool pool
+    ) {
+        final int length = plan.length;
+        final int blocks = (lines + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        Parallel.forRange(pool, blocks, (start, end) -> {
+            final ComplexBuffer scratch = plan.lineScratch(COLUMN_BLOCK);
+            final double[] scratchReal = scratch.real;
+            final double[] scratchImaginary = scratch.imaginary;
+
+            for (int block = start; block < end; block++) {
+                final int first = block * COLUMN_BLOCK;
+                final int width = java.lang.Math.min(COLUMN_BLOCK, lines - first);
+
+                for (int row = 0; row < length; row++) {
+                    final int base = row * lines + first;
+                    for (int column = 0; column < width; column++) {
+                        scratchReal[column * length + row] = real[base + column];
+                        scratchImaginary[column * length + row] = imaginary[base + column];
+                    }
                 }
-            }
-        }
 
-        for (int i = 1, j = 0; i < length; i++) {
-            int bit = length >>> 1;
-            while ((j & bit) != 0) {
-                j ^= bit;
-                bit >>>= 1;
-            }
-            j ^= bit;
+                for (int column = 0; column < width; column++)
+                    plan.transform(scratchReal, scratchImaginary, column * length, 1, sign);
 
-            if (i < j) {
-                Complex tmp = data[i];
-                data[i] = data[j];
-                data[j] = tmp;
+                for (int row = 0; row < length; row++) {
+                    final int base = row * lines + first;
+                    for (int column = 0; column < width; column++) {
+                        real[base + column] = scratchReal[column * length + row];
+                        imaginary[base + column] = scratchImaginary[column * length + row];
+                    }
+                }
             }
-        }
+        });
     }
 
     /**
-     * Does in-place transformation of data at an offset, with a specified stride
-     * between the values it operates on.
+     * Number of complex values per row of the half spectrum of a real grid
+     * with the given number of columns
+     */
+    public static int halfColumns(int columns) {
+        return columns / 2 + 1;
+    }
+
+    /**
+     * Forward 2D transform of real row-major data, same exponent as {@link #fft2D}.
      * <p>
-     * DFT of
-     * c_k = sum_j y_j e^(2 pi i j k / n)
+     * The spectrum of a real grid is Hermitian, c(-k_y, -k_x) = conj(c(k_y, k_x)), so
+     * only columns k_x in [0, columns / 2] are kept: halfSpectrum is row-major
+     * rows x {@link #halfColumns}(columns). Rows are transformed two at a time, as the
+     * real and imaginary part of one complex row, and separated with
      * <p>
-     * Does not perform normalization
+     * A_k = (Z_k + conj(Z_(n-k))) / 2, B_k = (Z_k - conj(Z_(n-k))) / 2i
+     * <p>
+     * which halves the row pass; the column pass then only covers the kept columns.
      *
-     * @param data
-     * @param offset
-     * @param stride
-     * @param length
-     */
-    private static void rawFFT(
-            final Complex[] data,
-            final int offset,
-            final int stride,
-            final int length
-    ) {
-        if (length == 1) return;
-        if (!Math.isPowerOfTwo(length)) throw new IllegalArgumentException();
+     * @param data         real input
+     * @param halfSpectrum receives the half spectrum
+     * @param plan
+     */
+    public static void r2c2D(double[] data, ComplexBuffer halfSpectrum, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int halfColumns = halfColumns(columns);
+        if (data.length != rows * columns) throw new IllegalArgumentException();
+        if (halfSpectrum.length() != rows * halfColumns) throw new IllegalArgumentException();
+
+        final FFTEvent event = new FFTEvent(rows, columns, false, true);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.FORWARD_FFT);
+        final double[] spectrumReal = halfSpectrum.real;
+        final double[] spectrumImaginary = halfSpectrum.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        final FFTPlan rowPlan = plan.rowPlan;
 
-        for (int chunk = length; chunk >= 2; chunk /= 2) {
-            final int half = chunk / 2;
-            final double angle = -2.0 * java.lang.Math.PI / chunk;
-            final Complex factorStep = new Complex(java.lang.Math.cos(angle), java.lang.Math.sin(angle));
+        Parallel.forRange(pool, (rows + 1) / 2, (start, end) -> {
+            final ComplexBuffer line = rowPlan.lineScratch(1);
+            final double[] lineReal = line.real;
+            final double[] lineImaginary = line.imaginary;
 
-            for (int i = 0; i < length; i += chunk) {
-                Complex factor = new Complex(1.0, 0.0);
-                for (int j = 0; j < half; j++) {
-                    final Complex even = data[offset + stride * (i + j)];
-                    final Complex odd = data[offset + stride * (i + j + half)];
+            for (int pair = start; pair < end; pair++) {
+                final int first = 2 * pair;
+                final boolean hasSecond = first + 1 < rows;
 
-                    data[offset + stride * (i + j)] = even.add(odd);
-                    data[offset + stride * (i + j + half)] = even.sub(odd).mul(factor);
+                System.arraycopy(data, first * columns, lineReal, 0, columns);
+                if (hasSecond) System.arraycopy(data, (first + 1) * columns, lineImaginary, 0, columns);
+                else Arrays.fill(lineImaginary, 0, columns, 0.0);
 
-                    factor = factor.mul(factorStep);
+                rowPlan.transform(lineReal, lineImaginary, 0, 1, -1.0);
+
+                for (int k = 0; k < halfColumns; k++) {
+                    final int mirror = k == 0 ? 0 : columns - k;
+                    final double real = lineReal[k];
+                    final double imaginary = lineImaginary[k];
+                    final double mirrorReal = lineReal[mirror];
+                    final double mirrorImaginary = -lineImaginary[mirror];
+
+                    spectrumReal[first * halfColumns + k] = 0.5 * (real + mirrorReal);
+                    spectrumImaginary[first * halfColumns + k] = 0.5 * (imaginary + mirrorImaginary);
+                    if (hasSecond) {
+                        spectrumReal[(first + 1) * halfColumns + k] = 0.5 * (imaginary - mirrorImaginary);
+                        spectrumImaginary[(first + 1) * halfColumns + k] = -0.5 * (real - mirrorReal);
+                    }
                 }
             }
-        }
+        });
 
-        for (int i = 1, j = 0; i < length; i++) {
-            int bit = length >>> 1;
-            while ((j & bit) != 0) {
-                j ^= bit;
-                bit >>>= 1;
-            }
-            j ^= bit;
+        columnPass(spectrumReal, spectrumImaginary, plan.columnPlan, halfColumns, -1.0, pool);
+        Metrics.stop(span);
+        event.commit();
+    }
 
-            if (i < j) {
-                Complex tmp = data[offset + stride * i];
-                data[offset + stride * i] = data[offset + stride * j];
-                data[offset + stride * j] = tmp;
+    /**
+     * Inverse of {@link #r2c2D}, normalized like {@link #ifft2D}. The half spectrum is
+     * taken to be that of a real grid; imaginary parts that a Hermitian spectrum
+     * cannot have (columns 0 and columns / 2 after the column pass) are ignored.
+     *
+     * @param halfSpectrum half spectrum, overwritten with intermediate values
+     * @param data         receives the real field
+     * @param plan
+     */
+    public static void c2r2D(ComplexBuffer halfSpectrum, double[] data, FFTPlan2D plan) {
+        c2r2D(halfSpectrum, null, data, plan);
+    }
+
+    /**
+     * Same inverse as {@link #c2r2D(ComplexBuffer, double[], FFTPlan2D)}, taking
+     * the result as the imaginary part of a field whose real part is realPart;
+     * modulus receives |realPart + i result|. Folding the modulus into the
+     * inverse's last pass saves another trip over the grid. modulus may be
+     * realPart itself.
+     */
+    static void c2r2DModulus(ComplexBuffer halfSpectrum, double[] realPart, double[] modulus, FFTPlan2D plan) {
+        if (realPart.length != plan.numPoints()) throw new IllegalArgumentException();
+
+        c2r2D(halfSpectrum, realPart, modulus, plan);
+    }
+
+    /**
+     * @param realPart null to write the inverse itself into data
+     */
+    private static void c2r2D(ComplexBuffer halfSpectrum, double[] realPart, double[] data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int halfColumns = halfColumns(columns);
+        final int numPoints = plan.numPoints();
+        if (data.length != numPoints) throw new IllegalArgumentException();
+        if (halfSpectrum.length() != rows * halfColumns) throw new IllegalArgumentException();
+
+        final FFTEvent event = new FFTEvent(rows, columns, true, true);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.INVERSE_FFT);
+        final double[] spectrumReal = halfSpectrum.real;
+        final double[] spectrumImaginary = halfSpectrum.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        final FFTPlan rowPlan = plan.rowPlan;
+
+        columnPass(spectrumReal, spectrumImaginary, plan.columnPlan, halfColumns, 1.0, pool);
+
+        final double normalization = 1.0 / numPoints;
+        Parallel.forRange(pool, (rows + 1) / 2, (start, end) -> {
+            final ComplexBuffer line = rowPlan.lineScratch(1);
+            final double[] lineReal = line.real;
+            final double[] lineImaginary = line.imaginary;
+
+            for (int pair = start; pair < end; pair++) {
+                final int first = 2 * pair;
+                final boolean hasSecond = first + 1 < rows;
+                final int firstBase = first * halfColumns;
+                final int secondBase = (first + 1) * halfColumns;
+
+                /*
+                rebuild Z = A + iB over the full row, with A_(n-k) = conj(A_k)
+                 */
+                for (int k = 0; k < columns; k++) {
+                    final boolean mirrored = k >= halfColumns;
+                    final int source = mirrored ? columns - k : k;
+                    final boolean selfConjugate = source == 0 || 2 * source == columns;
+                    final double conjugation = mirrored ? -1.0 : 1.0;
+
+                    final double aReal = spectrumReal[firstBase + source];
+                    final double aImaginary = selfConjugate
+                            ? 0.0
+                            : conjugation * spectrumImaginary[firstBase + source];
+                    double bReal = 0.0;
+                    double bImaginary = 0.0;
+                    if (hasSecond) {
+                        bReal = spectrumReal[secondBase + source];
+                        bImaginary = selfConjugate
+                                ? 0.0
+                                : conjugation * spectrumImaginary[secondBase + source];
+                    }
+
+                    lineReal[k] = aReal - bImaginary;
+                    lineImaginary[k] = aImaginary + bReal;
+                }
+
+                rowPlan.transform(lineReal, lineImaginary, 0, 1, 1.0);
+
+                writeRow(lineReal, normalization, realPart, data, first * columns, columns);
+                if (hasSecond) writeRow(lineImaginary, normalization, realPart, data, (first + 1) * columns, columns);
             }
+        });
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    /**
+     * Writes the normalized line into data at offset, or its modulus taken
+     * together with realPart when that is not null
+     */
+    private static void writeRow(
+            double[] line, double normalization,
+            double[] realPart, double[] data,
+            int offset, int columns
+    ) {
+        if (realPart == null) {
+            for (int x = 0; x < columns; x++)
+                data[offset + x] = line[x] * normalization;
+            return;
+        }
+
+        for (int x = 0; x < columns; x++) {
+            final double real = realPart[offset + x];
+            final double imaginary = line[x] * normalization;
+            data[offset + x] = java.lang.Math.sqrt(real * real + imaginary * imaginary);
         }
     }
 
+    /**
+     * Writes the transpose of a row-major rows x columns grid into destination,
+     * which becomes row-major columns x rows. Works in TRANSPOSE_TILE square tiles
+     * so both sides stay in cache.
+     */
+    public static void transpose(ComplexBuffer source, ComplexBuffer destination, int rows, int columns) {
+        if (source.length() != rows * columns) throw new IllegalArgumentException();
+        if (destination.length() != rows * columns) throw new IllegalArgumentException();
+
+        transpose(source, destination, rows, columns, null);
+    }
+
+    private static void transpose(
+            ComplexBuffer source, ComplexBuffer destination,
+            int rows, int columns,
+            ForkJoinPool pool
+    ) {
+        final double[] sourceReal = source.real;
+        final double[] sourceImaginary = source.imaginary;
+        final double[] destinationReal = destination.real;
+        final double[] destinationImaginary = destination.imaginary;
+        final int tileRows = (rows + TRANSPOSE_TILE - 1) / TRANSPOSE_TILE;
+
+        Parallel.forRange(pool, tileRows, (start, end) -> {
+            for (int tileRow = start; tileRow < end; tileRow++) {
+                final int rowStart = tileRow * TRANSPOSE_TILE;
+                final int rowEnd = java.lang.Math.min(rowStart + TRANSPOSE_TILE, rows);
+
+                for (int columnStart = 0; columnStart < columns; columnStart += TRANSPOSE_TILE) {
+                    final int columnEnd = java.lang.Math.min(columnStart + TRANSPOSE_TILE, columns);
+
+                    for (int row = rowStart; row < rowEnd; row++)
+                        for (int column = columnStart; column < columnEnd; column++) {
+                            destinationReal[column * rows + row] = sourceReal[row * columns + column];
+                            destinationImaginary[column * rows + row] = sourceImaginary[row * columns + column];
+                        }
+                }
+            }
+        });
+    }
+
     /**
      * Expects row-major data
      *
@@ -106,15 +417,10 @@ public class FFT {
      * @param rows
      * @param columns
      */
-    public static void fft2D(Complex[] data, int rows, int columns) {
-        if (!Math.isPowerOfTwo(rows)) throw new IllegalArgumentException();
-        if (!Math.isPowerOfTwo(columns)) throw new IllegalArgumentException();
-        if (data.length != rows * columns) throw new IllegalArgumentException();
-
-        for (int row = 0; row < rows; row++)
-            rawFFT(data, row * columns, 1, columns);
-        for (int column = 0; column < columns; column++)
-            rawFFT(data, column, columns, rows);
+    public static void ifft2D(Complex[] data, int rows, int columns) {
+        final ComplexBuffer buffer = ComplexBuffer.fromComplex(data);
+        ifft2D(buffer, rows, columns);
+        buffer.copyTo(data);
     }
 
     /**
@@ -124,43 +430,194 @@ public class FFT {
      * @param rows
      * @param columns
      */
-    public static void ifft2D(Complex[] data, int rows, int columns) {
-        final int numPoints = rows * columns;
-        for (int i = 0; i < numPoints; i++)
-            data[i] = data[i].conjugate();
+    public static void ifft2D(ComplexBuffer data, int rows, int columns) {
+        ifft2D(data, FFTPlan2D.of(rows, columns));
+    }
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void ifft2D(ComplexBuffer data, FFTPlan2D plan) {
+        final int numPoints = plan.numPoints();
+        if (data.length() != numPoints) throw new IllegalArgumentException();
+
+        final FFTEvent event = new FFTEvent(plan.rows, plan.columns, true, false);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.INVERSE_FFT);
+        final double[] real = data.real;
+        final double[] imaginary = data.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        Parallel.forRange(pool, numPoints, (start, end) -> ComplexKernels.negate(imaginary, start, end));
+
+        forward2D(data, plan);
+
+        final double normalization = 1.0 / numPoints;
+        Parallel.forRange(pool, numPoints, (start, end) ->
+                ComplexKernels.scaleConjugate(real, imaginary, start, end, normalization));
+        Metrics.stop(span);
+        event.commit();
+    }
+
+    /**
+     * Inverse of {@link #fft2DTransposed}: takes a transposed spectrum
+     * (row-major plan.columns x plan.rows) and writes the row-major
+     * plan.rows x plan.columns field into data.
+     *
+     * @param transposed transposed spectrum, overwritten with intermediate values
+     * @param data       receives the field
+     * @param plan
+     */
+    public static void ifft2DTransposed(ComplexBuffer transposed, ComplexBuffer data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int numPoints = plan.numPoints();
+        if (data.length() != numPoints) throw new IllegalArgumentException();
+        if (transposed.length() != numPoints) throw new IllegalArgumentException();
+
+        final FFTEvent event = new FFTEvent(rows, columns, true, false);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.INVERSE_FFT);
+        final ForkJoinPool pool = plan.activePool();
+        final double[] transposedImaginary = transposed.imaginary;
+        Parallel.forRange(pool, numPoints, (start, end) -> ComplexKernels.negate(transposedImaginary, start, end));
 
-        fft2D(data, rows, columns);
+        rowPass(transposed.real, transposed.imaginary, plan.columnPlan, columns, -1.0, pool);
+        transpose(transposed, data, columns, rows, pool);
+        rowPass(data.real, data.imaginary, plan.rowPlan, rows, -1.0, pool);
 
         final double normalization = 1.0 / numPoints;
-        for (int i = 0; i < numPoints; i++)
-            data[i] = data[i].mul(normalization).conjugate();
+        final double[] real = data.real;
+        final double[] imaginary = data.imaginary;
+        Parallel.forRange(pool, numPoints, (start, end) ->
+                ComplexKernels.scaleConjugate(real, imaginary, start, end, normalization));
+        Metrics.stop(span);
+        event.commit();
     }
 
     public static void shiftCenter(Complex[] data, int rows, int columns) {
-        if (!Math.isPowerOfTwo(rows)) throw new IllegalArgumentException();
-        if (!Math.isPowerOfTwo(columns)) throw new IllegalArgumentException();
-        if (data.length != rows * columns) throw new IllegalArgumentException();
+        final ComplexBuffer buffer = ComplexBuffer.fromComplex(data);
+        shiftCenter(buffer, rows, columns);
+        buffer.copyTo(data);
+    }
 
-        final int rowsHalf = rows / 2;
-        final int columnsHalf = columns / 2;
-
-        for (int row = 0; row < rowsHalf; row++) {
-            final int topBase = row * columns;
-            final int bottomBase = (row + rowsHalf) * columns;
-
-            for (int column = 0; column < columnsHalf; column++) {
-                final int a = topBase + column;
-                final int b = bottomBase + column + columnsHalf;
-                Complex tmp = data[a];
-                data[a] = data[b];
-                data[b] = tmp;
-
-                final int a2 = topBase + column + columnsHalf;
-                final int b2 = bottomBase + column;
-                tmp = data[a2];
-                data[a2] = data[b2];
-                data[b2] = tmp;
-            }
+    public static void shiftCenter(ComplexBuffer data, int rows, int columns) {
+        shiftCenter(data, FFTPlan2D.of(rows, columns));
+    }
+
+    /**
+     * Moves the zero frequency to (rows / 2, columns / 2), so index x holds
+     * frequency x - columns / 2 (same for rows). Works for odd sizes, where it is
+     * not its own inverse; undo it with {@link #unshiftCenter}.
+     *
+     * @param data
+     * @param plan
+     */
+    public static void shiftCenter(ComplexBuffer data, FFTPlan2D plan) {
+        roll(data, plan, plan.rows / 2, plan.columns / 2);
+    }
+
+    public static void unshiftCenter(Complex[] data, int rows, int columns) {
+        final ComplexBuffer buffer = ComplexBuffer.fromComplex(data);
+        unshiftCenter(buffer, rows, columns);
+        buffer.copyTo(data);
+    }
+
+    public static void unshiftCenter(ComplexBuffer data, int rows, int columns) {
+        unshiftCenter(data, FFTPlan2D.of(rows, columns));
+    }
+
+    /**
+     * Inverse of {@link #shiftCenter}, moves the zero frequency back to (0, 0)
+     *
+     * @param data
+     * @param plan
+     */
+    public static void unshiftCenter(ComplexBuffer data, FFTPlan2D plan) {
+        roll(data, plan, plan.rows - plan.rows / 2, plan.columns - plan.columns / 2);
+    }
+
+    /**
+     * Cyclically moves entry (row, column) to
+     * ((row + rowShift) mod rows, (column + columnShift) mod columns)
+     */
+    private static void roll(ComplexBuffer data, FFTPlan2D plan, int rowShift, int columnShift) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != rows * columns) throw new IllegalArgumentException();
+
+        final double[] real = data.real;
+        final double[] imaginary = data.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+
+        if (rows % 2 == 0 && columns % 2 == 0) {
+            /*
+            shifting by half in both directions just swaps opposite quadrants
+             */
+            final int rowsHalf = rows / 2;
+            final int columnsHalf = columns / 2;
+
+            Parallel.forRange(pool, rowsHalf, (start, end) -> {
+                for (int row = start; row < end; row++) {
+                    final int topBase = row * columns;
+                    final int bottomBase = (row + rowsHalf) * columns;
+
+                    for (int column = 0; column < columnsHalf; column++) {
+                        swap(real, imaginary, topBase + column, bottomBase + column + columnsHalf);
+                        swap(real, imaginary, topBase + column + columnsHalf, bottomBase + column);
+                    }
+                }
+            });
+            return;
         }
+
+        /*
+        rotating a row-major grid by whole rows is rotating the flat array by
+        rowShift * columns, then each row is rotated on its own
+         */
+        rotate(real, imaginary, 0, rows * columns, rowShift * columns, pool);
+        Parallel.forRange(pool, rows, (start, end) -> {
+            for (int row = start; row < end; row++)
+                rotate(real, imaginary, row * columns, columns, columnShift, null);
+        });
+    }
+
+    /**
+     * Rotates [offset, offset + length) right by shift, in place, by three reversals
+     */
+    private static void rotate(
+            double[] real, double[] imaginary,
+            int offset, int length, int shift,
+            ForkJoinPool pool
+    ) {
+        shift %= length;
+        if (shift == 0) return;
+
+        reverse(real, imaginary, offset, length, pool);
+        reverse(real, imaginary, offset, shift, pool);
+        reverse(real, imaginary, offset + shift, length - shift, pool);
+    }
+
+    private static void reverse(
+            double[] real, double[] imaginary,
+            int offset, int length,
+            ForkJoinPool pool
+    ) {
+        final int last = offset + length - 1;
+        Parallel.forRange(pool, length / 2, (start, end) -> {
+            for (int i = start; i < end; i++)
+                swap(real, imaginary, offset + i, last - i);
+        });
+    }
+
+    private static void swap(double[] real, double[] imaginary, int a, int b) {
+        double tmp = real[a];
+        real[a] = real[b];
+        real[b] = tmp;
+        tmp = imaginary[a];
+        imaginary[a] = imaginary[b];
+        imaginary[b] = tmp;
     }
 }
@@ -0,0 +1,686 @@
+package fft;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed tables for a 1D transform of a fixed length.
+ * <p>
+ * The kernel is picked from the length:
+ * <ul>
+ *     <li>powers of two use in-place radix-4 butterflies, finished off by one
+ *     radix-2 pass when log2 length is odd; plain radix-2 butterflies are kept as
+ *     a reference (see {@link #of(int, Kernel)})</li>
+ *     <li>lengths whose only prime factors are 2, 3, 5 and 7 use a mixed-radix
+ *     Stockham transform, which sorts itself and needs no permutation</li>
+ *     <li>any other length is rewritten as a circular convolution (Bluestein)
+ *     and evaluated with a power-of-two transform of at least 2 length - 1</li>
+ * </ul>
+ * Twiddles are evaluated directly as cos/sin(2 pi k / n) rather than by a running
+ * product, so the error does not grow along the row. The bit-reversal permutation
+ * is stored as a flat list of index pairs to swap. When {@link ComplexKernels}
+ * are vectorized, each radix-2 or radix-4 pass also gets its twiddles laid out
+ * contiguously so the butterflies of a contiguous line can be loaded a vector at
+ * a time.
+ * <p>
+ * Plans are immutable and shared; use {@link #of(int)} to get the cached plan.
+ */
+public final class FFTPlan {
+    private static final ConcurrentHashMap<Integer, FFTPlan> CACHE = new ConcurrentHashMap<>();
+    /**
+     * Largest radix a MIXED_RADIX plan uses
+     */
+    private static final int MAX_RADIX = 7;
+
+    public enum Kernel {
+        RADIX_2,
+        RADIX_4,
+        MIXED_RADIX,
+        BLUESTEIN
+    }
+
+    public final int length;
+    public final Kernel kernel;
+    /**
+     * cos(2 pi k / length), for k in [0, 3 length / 4) with RADIX_2 and RADIX_4,
+     * and [0, length) with MIXED_RADIX
+     */
+    private final double[] cosines;
+    /**
+     * sin(2 pi k / length), same range as {@link #cosines}
+     */
+    private final double[] sines;
+    /**
+     * RADIX_2, when vectorized: twiddles of each pass, the pass with half-size h
+     * at offset h - 1, i.e. stageCosines[h - 1 + j] = cosines[j length / (2 h)].
+     * RADIX_4, when vectorized: W^j of the pass with quarter-size q at offset
+     * q - 1, and W^(2j) and W^(3j) one and two blocks of length / 2 further
+     */
+    private final double[] stageCosines;
+    private final double[] stageSines;
+    /**
+     * RADIX_2, RADIX_4: pairs (i, j), i < j, to swap after the butterflies
+     */
+    private final int[] swaps;
+    /**
+     * MIXED_RADIX: radices of the Stockham passes, in order
+     */
+    private final int[] radices;
+    /**
+     * BLUESTEIN: power-of-two plan the convolution runs on
+     */
+    private final FFTPlan convolutionPlan;
+    /**
+     * BLUESTEIN: cos/sin(pi k^2 / length) for k in [0, length)
+     */
+    private final double[] chirpCosines;
+    private final double[] chirpSines;
+    /**
+     * BLUESTEIN: forward spectrum of the conjugate chirp, for exponent sign -1 and +1
+     */
+    private final ComplexBuffer negativeChirpSpectrum;
+    private final ComplexBuffer positiveChirpSpectrum;
+    /**
+     * MIXED_RADIX: per-thread interleaved scratch the line is copied into
+     */
+    private final ThreadLocal<double[]> scratch;
+    /**
+     * BLUESTEIN: per-thread buffer the convolution is evaluated in
+     */
+    private final ThreadLocal<ComplexBuffer> convolutionScratch;
+    /**
+     * per-thread lines staged by the 2D passes, see {@link #lineScratch}
+     */
+    private final ThreadLocal<ComplexBuffer> lineScratch = new ThreadLocal<>();
+
+    private FFTPlan(int length, Kernel kernel) {
+        if (length <= 0) throw new IllegalArgumentException();
+
+        this.length = length;
+        this.kernel = kernel;
+
+        if (kernel == Kernel.RADIX_2 || kernel == Kernel.RADIX_4) {
+            /*
+            a radix-4 pass over chunks of c reaches W_c^(3j) for j < c / 4, i.e.
+            3 length / 4 in the table
+             */
+            final int half = length / 2;
+            cosines = new double[3 * length / 4];
+            sines = new double[3 * length / 4];
+            fillTwiddles(cosines, sines, length);
+
+            final int[] pairs = new int[length];
+            int count = 0;
+            for (int i = 1, j = 0; i < length; i++) {
+                int bit = length >>> 1;
+                while ((j & bit) != 0) {
+                    j ^= bit;
+                    bit >>>= 1;
+                }
+                j ^= bit;
+
+                if (i < j) {
+                    pairs[count++] = i;
+                    pairs[count++] = j;
+                }
+            }
+            swaps = Arrays.copyOf(pairs, count);
+
+            if (kernel == Kernel.RADIX_2 && ComplexKernels.VECTORIZED) {
+                stageCosines = new double[length - 1];
+                stageSines = new double[length - 1];
+                for (int stageHalf = 1; stageHalf < length; stageHalf *= 2) {
+                    final int tableStep = half / stageHalf;
+                    for (int j = 0; j < stageHalf; j++) {
+                        stageCosines[stageHalf - 1 + j] = cosines[j * tableStep];
+                        stageSines[stageHalf - 1 + j] = sines[j * tableStep];
+                    }
+                }
+            } else if (kernel == Kernel.RADIX_4 && ComplexKernels.VECTORIZED && length >= 4) {
+                // quarters are powers of four apart, so [q - 1, 2q - 1) never overlap
+                stageCosines = new double[3 * half];
+                stageSines = new double[3 * half];
+                for (int quarter = length / 4; quarter >= 1; quarter /= 4) {
+                    final int tableStep = length / (4 * quarter);
+                    for (int j = 0; j < quarter; j++)
+                        for (int power = 1; power <= 3; power++) {
+                            stageCosines[(power - 1) * half + quarter - 1 + j] = cosines[power * j * tableStep];
+                            stageSines[(power - 1) * half + quarter - 1 + j] = sines[power * j * tableStep];
+                        }
+                }
+            } else {
+                stageCosines = null;
+                stageSines = null;
+            }
+
+            radices = null;
+            convolutionPlan = null;
+            chirpCosines = null;
+            chirpSines = null;
+            negativeChirpSpectrum = null;
+            positiveChirpSpectrum = null;
+            scratch = null;
+            convolutionScratch = null;
+        } else if (kernel == Kernel.MIXED_RADIX) {
+            cosines = new double[length];
+            sines = new double[length];
+            fillTwiddles(cosines, sines, length);
+            radices = factor(length);
+
+            stageCosines = null;
+            stageSines = null;
+            swaps = null;
+            convolutionPlan = null;
+            chirpCosines = null;
+            chirpSines = null;
+            negativeChirpSpectrum = null;
+            positiveChirpSpectrum = null;
+            /*
+            two ping-pong buffers for the passes, plus room for one butterfly's inputs
+             */
+            scratch = ThreadLocal.withInitial(() -> new double[4 * length + 2 * MAX_RADIX]);
+            convolutionScratch = null;
+        } else {
+            /*
+            2 j k = j^2 + k^2 - (k - j)^2, so
+            c_k = sum_j y_j e^(s 2 pi i j k / n)
+                = e^(s pi i k^2 / n) sum_j (y_j e^(s pi i j^2 / n)) e^(-s pi i (k - j)^2 / n)
+            which is a convolution of length 2n - 1, evaluated with a power-of-two FFT
+             */
+            final int convolutionLength = Math.nextPowerOfTwo(2 * length - 1);
+            convolutionPlan = FFTPlan.of(convolutionLength);
+
+            chirpCosines = new double[length];
+            chirpSines = new double[length];
+            for (int k = 0; k < length; k++) {
+                // k^2 mod 2n keeps the angle small so it does not lose precision
+                final long square = (long) k * k % (2L * length);
+                final double angle = java.lang.Math.PI * square / length;
+                chirpCosines[k] = java.lang.Math.cos(angle);
+                chirpSines[k] = java.lang.Math.sin(angle);
+            }
+
+            negativeChirpSpectrum = chirpSpectrum(-1.0);
+            positiveChirpSpectrum = chirpSpectrum(1.0);
+
+            cosines = null;
+            sines = null;
+            stageCosines = null;
+            stageSines = null;
+            swaps = null;
+            radices = null;
+            scratch = null;
+            convolutionScratch = ThreadLocal.withInitial(() -> new ComplexBuffer(convolutionLength));
+        }
+    }
+
+    public static FFTPlan of(int length) {
+        if (length <= 0) throw new IllegalArgumentException();
+
+        /*
+        not computeIfAbsent: a Bluestein plan creates its power-of-two plan while
+        being constructed, and the map does not allow nested updates
+         */
+        final FFTPlan cached = CACHE.get(length);
+        if (cached != null) return cached;
+
+        final FFTPlan plan = new FFTPlan(length, defaultKernel(length));
+        final FFTPlan raced = CACHE.putIfAbsent(length, plan);
+        return raced != null ? raced : plan;
+    }
+
+    /**
+     * Uncached plan with a given kernel, e.g. to check one kernel against another
+     *
+     * @throws IllegalArgumentException if the kernel cannot do length
+     */
+    public static FFTPlan of(int length, Kernel kernel) {
+        if (length <= 0) throw new IllegalArgumentException();
+        switch (kernel) {
+            case RADIX_2, RADIX_4 -> {
+                if (!Math.isPowerOfTwo(length))
+                    throw new IllegalArgumentException(kernel + " needs a power of two, got " + length);
+            }
+            case MIXED_RADIX -> {
+                if (!Math.isSmooth(length))
+                    throw new IllegalArgumentException(kernel + " needs a 7-smooth length, got " + length);
+            }
+            case BLUESTEIN -> {
+            }
+        }
+
+        return new FFTPlan(length, kernel);
+    }
+
+    private static Kernel defaultKernel(int length) {
+        if (Math.isPowerOfTwo(length)) return Kernel.RADIX_4;
+        if (Math.isSmooth(length)) return Kernel.MIXED_RADIX;
+        return Kernel.BLUESTEIN;
+    }
+
+    /**
+     * Per-thread buffer of at least lines x length values to stage lines in
+     * before transforming them, kept from one call to the next so a pass over a
+     * grid does not allocate. Its contents are whatever the last user left.
+     */
+    ComplexBuffer lineScratch(int lines) {
+        ComplexBuffer buffer = lineScratch.get();
+        if (buffer == null || buffer.length() < lines * length) {
+            buffer = new ComplexBuffer(lines * length);
+            lineScratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static void fillTwiddles(double[] cosines, double[] sines, int length) {
+        for (int k = 0; k < cosines.length; k++) {
+            final double angle = 2.0 * java.lang.Math.PI * k / length;
+            cosines[k] = java.lang.Math.cos(angle);
+            sines[k] = java.lang.Math.sin(angle);
+        }
+    }
+
+    /**
+     * Splits a 2, 3, 5, 7-smooth length into radices, taking 4s first to
+     * halve the number of passes over powers of two
+     */
+    private static int[] factor(int length) {
+        final ArrayList<Integer> factors = new ArrayList<>();
+        int remaining = length;
+        for (int radix : new int[]{4, 2, 3, 5, 7})
+            while (remaining % radix == 0) {
+                factors.add(radix);
+                remaining /= radix;
+            }
+        if (remaining != 1) throw new IllegalStateException();
+
+        final int[] result = new int[factors.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = factors.get(i);
+        return result;
+    }
+
+    /**
+     * Forward spectrum of b_t = e^(-s pi i t^2 / n), laid out circularly for t in (-n, n)
+     */
+    private ComplexBuffer chirpSpectrum(double sign) {
+        final int convolutionLength = convolutionPlan.length;
+        final ComplexBuffer chirp = new ComplexBuffer(convolutionLength);
+        for (int k = 0; k < length; k++) {
+            chirp.real[k] = chirpCosines[k];
+            chirp.imaginary[k] = -sign * chirpSines[k];
+            if (k > 0) {
+                chirp.real[convolutionLength - k] = chirpCosines[k];
+                chirp.imaginary[convolutionLength - k] = -sign * chirpSines[k];
+            }
+        }
+        convolutionPlan.transform(chirp.real, chirp.imaginary, 0, 1, -1.0);
+        return chirp;
+    }
+
+    /**
+     * Does in-place transformation of data at an offset, with a specified stride
+     * between the values it operates on.
+     * <p>
+     * DFT of
+     * c_k = sum_j y_j e^(sign 2 pi i j k / n)
+     * <p>
+     * Does not perform normalization
+     *
+     * @param real
+     * @param imaginary
+     * @param offset
+     * @param stride
+     * @param sign      sign of the exponent, 1.0 or -1.0
+     */
+    public void transform(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride,
+            final double sign
+    ) {
+        if (length == 1) return;
+
+        switch (kernel) {
+            case RADIX_2 -> radix2(real, imaginary, offset, stride, sign);
+            case RADIX_4 -> radix4(real, imaginary, offset, stride, sign);
+            case MIXED_RADIX -> mixedRadix(real, imaginary, offset, stride, sign);
+            case BLUESTEIN -> bluestein(real, imaginary, offset, stride, sign);
+        }
+    }
+
+    private void radix2(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride,
+            final double sign
+    ) {
+        for (int chunk = length; chunk >= 2; chunk /= 2) {
+            final int half = chunk / 2;
+            final int tableStep = length / chunk;
+
+            if (stride == 1 && stageCosines != null && half >= ComplexKernels.LANES) {
+                for (int i = 0; i < length; i += chunk)
+                    ComplexKernels.butterflies(
+                            real, imaginary,
+                            offset + i, offset + i + half,
+                            stageCosines, stageSines, half - 1,
+                            half, sign
+                    );
+                continue;
+            }
+
+            for (int i = 0; i < length; i += chunk) {
+                for (int j = 0; j < half; j++) {
+                    final double factorReal = cosines[j * tableStep];
+                    final double factorImaginary = sign * sines[j * tableStep];
+
+                    final int evenIndex = offset + stride * (i + j);
+                    final int oddIndex = offset + stride * (i + j + half);
+                    final double evenReal = real[evenIndex];
+                    final double evenImaginary = imaginary[evenIndex];
+                    final double oddReal = real[oddIndex];
+                    final double oddImaginary = imaginary[oddIndex];
+
+                    real[evenIndex] = evenReal + oddReal;
+                    imaginary[evenIndex] = evenImaginary + oddImaginary;
+
+                    final double differenceReal = evenReal - oddReal;
+                    final double differenceImaginary = evenImaginary - oddImaginary;
+                    real[oddIndex] = differenceReal * factorReal - differenceImaginary * factorImaginary;
+                    imaginary[oddIndex] = differenceReal * factorImaginary + differenceImaginary * factorReal;
+                }
+            }
+        }
+
+        bitReverse(real, imaginary, offset, stride);
+    }
+
+    /**
+     * Radix-2^2 decimation in frequency: each pass does the work of two radix-2
+     * passes, over chunks of c and c / 2, in one trip over the data. With
+     * q = c / 4, W = W_c and a, b, c, d the values at j, j + q, j + 2q, j + 3q
+     * of a chunk,
+     * <p>
+     * t0 = a + c, t1 = b + d, t2 = a - c, t3 = i sign (b - d)
+     * <p>
+     * y_j = t0 + t1, y_(j+q) = (t0 - t1) W^(2j),
+     * y_(j+2q) = (t2 + t3) W^j, y_(j+3q) = (t2 - t3) W^(3j)
+     * <p>
+     * which is what the two radix-2 passes give, so the values end up in the same
+     * bit-reversed order. Half the passes means half the trips over the line, and
+     * t3 costs no multiplies, so there are a quarter fewer of those as well. j = 0
+     * of every pass, and the whole of the last one, need no twiddles. When
+     * log2 length is odd, a twiddle-free radix-2 pass over pairs finishes off.
+     */
+    private void radix4(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride,
+            final double sign
+    ) {
+        int chunk = length;
+        for (; chunk >= 4; chunk /= 4) {
+            final int quarter = chunk / 4;
+            final int tableStep = length / chunk;
+
+            if (stride == 1 && stageCosines != null && quarter >= ComplexKernels.LANES) {
+                for (int i = 0; i < length; i += chunk)
+                    ComplexKernels.butterflies4(
+                            real, imaginary,
+                            offset + i, quarter,
+                            stageCosines, stageSines, quarter - 1, length / 2,
+                            quarter, sign
+                    );
+                continue;
+            }
+
+            for (int i = 0; i < length; i += chunk) {
+                final int base = offset + stride * i;
+                butterfly4(real, imaginary, base, stride * quarter, sign);
+
+                for (int j = 1; j < quarter; j++)
+                    butterfly4(
+                            real, imaginary, base + stride * j, stride * quarter,
+                            cosines[j * tableStep], sign * sines[j * tableStep],
+                            cosines[2 * j * tableStep], sign * sines[2 * j * tableStep],
+                            cosines[3 * j * tableStep], sign * sines[3 * j * tableStep],
+                            sign
+                    );
+            }
+        }
+
+        if (chunk == 2)
+            for (int i = 0; i < length; i += 2) {
+                final int evenIndex = offset + stride * i;
+                final int oddIndex = evenIndex + stride;
+                final double evenReal = real[evenIndex];
+                final double evenImaginary = imaginary[evenIndex];
+                final double oddReal = real[oddIndex];
+                final double oddImaginary = imaginary[oddIndex];
+
+                real[evenIndex] = evenReal + oddReal;
+                imaginary[evenIndex] = evenImaginary + oddImaginary;
+                real[oddIndex] = evenReal - oddReal;
+                imaginary[oddIndex] = evenImaginary - oddImaginary;
+            }
+
+        bitReverse(real, imaginary, offset, stride);
+    }
+
+    /**
+     * Radix-4 butterfly of {@link #radix4} at j = 0, where every twiddle is 1
+     */
+    private static void butterfly4(
+            final double[] real,
+            final double[] imaginary,
+            final int index,
+            final int quarterStride,
+            final double sign
+    ) {
+        final int index1 = index + quarterStride;
+        final int index2 = index1 + quarterStride;
+        final int index3 = index2 + quarterStride;
+
+        final double sumReal = real[index] + real[index2];
+        final double sumImaginary = imaginary[index] + imaginary[index2];
+        final double differenceReal = real[index] - real[index2];
+        final double differenceImaginary = imaginary[index] - imaginary[index2];
+        final double oddSumReal = real[index1] + real[index3];
+        final double oddSumImaginary = imaginary[index1] + imaginary[index3];
+        final double rotatedReal = -sign * (imaginary[index1] - imaginary[index3]);
+        final double rotatedImaginary = sign * (real[index1] - real[index3]);
+
+        real[index] = sumReal + oddSumReal;
+        imaginary[index] = sumImaginary + oddSumImaginary;
+        real[index1] = sumReal - oddSumReal;
+        imaginary[index1] = sumImaginary - oddSumImaginary;
+        real[index2] = differenceReal + rotatedReal;
+        imaginary[index2] = differenceImaginary + rotatedImaginary;
+        real[index3] = differenceReal - rotatedReal;
+        imaginary[index3] = differenceImaginary - rotatedImaginary;
+    }
+
+    /**
+     * Radix-4 butterfly of {@link #radix4} with twiddles W^j, W^(2j) and W^(3j)
+     */
+    private static void butterfly4(
+            final double[] real,
+            final double[] imaginary,
+            final int index,
+            final int quarterStride,
+            final double factor1Real, final double factor1Imaginary,
+            final double factor2Real, final double factor2Imaginary,
+            final double factor3Real, final double factor3Imaginary,
+            final double sign
+    ) {
+        final int index1 = index + quarterStride;
+        final int index2 = index1 + quarterStride;
+        final int index3 = index2 + quarterStride;
+
+        final double sumReal = real[index] + real[index2];
+        final double sumImaginary = imaginary[index] + imaginary[index2];
+        final double differenceReal = real[index] - real[index2];
+        final double differenceImaginary = imaginary[index] - imaginary[index2];
+        final double oddSumReal = real[index1] + real[index3];
+        final double oddSumImaginary = imaginary[index1] + imaginary[index3];
+        final double rotatedReal = -sign * (imaginary[index1] - imaginary[index3]);
+        final double rotatedImaginary = sign * (real[index1] - real[index3]);
+
+        real[index] = sumReal + oddSumReal;
+        imaginary[index] = sumImaginary + oddSumImaginary;
+
+        final double value1Real = sumReal - oddSumReal;
+        final double value1Imaginary = sumImaginary - oddSumImaginary;
+        real[index1] = value1Real * factor2Real - value1Imaginary * factor2Imaginary;
+        imaginary[index1] = value1Real * factor2Imaginary + value1Imaginary * factor2Real;
+
+        final double value2Real = differenceReal + rotatedReal;
+        final double value2Imaginary = differenceImaginary + rotatedImaginary;
+        real[index2] = value2Real * factor1Real - value2Imaginary * factor1Imaginary;
+        imaginary[index2] = value2Real * factor1Imaginary + value2Imaginary * factor1Real;
+
+        final double value3Real = differenceReal - rotatedReal;
+        final double value3Imaginary = differenceImaginary - rotatedImaginary;
+        real[index3] = value3Real * factor3Real - value3Imaginary * factor3Imaginary;
+        imaginary[index3] = value3Real * factor3Imaginary + value3Imaginary * factor3Real;
+    }
+
+    private void bitReverse(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride
+    ) {
+        for (int p = 0; p < swaps.length; p += 2) {
+            final int a = offset + stride * swaps[p];
+            final int b = offset + stride * swaps[p + 1];
+            double tmp = real[a];
+            real[a] = real[b];
+            real[b] = tmp;
+            tmp = imaginary[a];
+            imaginary[a] = imaginary[b];
+            imaginary[b] = tmp;
+        }
+    }
+
+    /**
+     * Stockham decimation in frequency. With n the remaining sub-length, s the product
+     * of the radices already applied and m = n / r, one radix-r pass is
+     * <p>
+     * y[q + s (r p + k)] = W_n^(p k) sum_j x[q + s (p + j m)] W_r^(j k)
+     * <p>
+     * for p in [0, m), q in [0, s), k in [0, r). W_n^(p k) = W_length^(p k s), so a
+     * single table of length-th roots serves every pass.
+     */
+    private void mixedRadix(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride,
+            final double sign
+    ) {
+        final double[] work = scratch.get();
+        int from = 0;
+        int to = 2 * length;
+        final int butterfly = 4 * length;
+
+        for (int i = 0; i < length; i++) {
+            work[2 * i] = real[offset + stride * i];
+            work[2 * i + 1] = imaginary[offset + stride * i];
+        }
+
+        int n = length;
+        int s = 1;
+        for (final int radix : radices) {
+            final int m = n / radix;
+            final int rootStep = length / radix;
+
+            for (int p = 0; p < m; p++)
+                for (int q = 0; q < s; q++) {
+                    for (int j = 0; j < radix; j++) {
+                        final int source = from + 2 * (q + s * (p + j * m));
+                        work[butterfly + 2 * j] = work[source];
+                        work[butterfly + 2 * j + 1] = work[source + 1];
+                    }
+
+                    for (int k = 0; k < radix; k++) {
+                        double sumReal = 0.0;
+                        double sumImaginary = 0.0;
+                        for (int j = 0; j < radix; j++) {
+                            final int root = (j * k % radix) * rootStep;
+                            final double rootReal = cosines[root];
+                            final double rootImaginary = sign * sines[root];
+                            final double valueReal = work[butterfly + 2 * j];
+                            final double valueImaginary = work[butterfly + 2 * j + 1];
+                            sumReal += valueReal * rootReal - valueImaginary * rootImaginary;
+                            sumImaginary += valueReal * rootImaginary + valueImaginary * rootReal;
+                        }
+
+                        final int twiddle = p * k * s;
+                        final double twiddleReal = cosines[twiddle];
+                        final double twiddleImaginary = sign * sines[twiddle];
+                        final int target = to + 2 * (q + s * (radix * p + k));
+                        work[target] = sumReal * twiddleReal - sumImaginary * twiddleImaginary;
+                        work[target + 1] = sumReal * twiddleImaginary + sumImaginary * twiddleReal;
+                    }
+                }
+
+            n = m;
+            s *= radix;
+            final int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        for (int i = 0; i < length; i++) {
+            real[offset + stride * i] = work[from + 2 * i];
+            imaginary[offset + stride * i] = work[from + 2 * i + 1];
+        }
+    }
+
+    private void bluestein(
+            final double[] real,
+            final double[] imaginary,
+            final int offset,
+            final int stride,
+            final double sign
+    ) {
+        final int convolutionLength = convolutionPlan.length;
+        final ComplexBuffer work = convolutionScratch.get();
+        final double[] workReal = work.real;
+        final double[] workImaginary = work.imaginary;
+
+        for (int j = 0; j < length; j++) {
+            final double valueReal = real[offset + stride * j];
+            final double valueImaginary = imaginary[offset + stride * j];
+            final double chirpReal = chirpCosines[j];
+            final double chirpImaginary = sign * chirpSines[j];
+            workReal[j] = valueReal * chirpReal - valueImaginary * chirpImaginary;
+            workImaginary[j] = valueReal * chirpImaginary + valueImaginary * chirpReal;
+        }
+        Arrays.fill(workReal, length, convolutionLength, 0.0);
+        Arrays.fill(workImaginary, length, convolutionLength, 0.0);
+
+        convolutionPlan.transform(workReal, workImaginary, 0, 1, -1.0);
+
+        final ComplexBuffer chirpSpectrum = sign < 0 ? negativeChirpSpectrum : positiveChirpSpectrum;
+        ComplexKernels.multiply(workReal, workImaginary, chirpSpectrum.real, chirpSpectrum.imaginary, 0, convolutionLength);
+
+        convolutionPlan.transform(workReal, workImaginary, 0, 1, 1.0);
+
+        final double normalization = 1.0 / convolutionLength;
+        for (int k = 0; k < length; k++) {
+            final double valueReal = workReal[k] * normalization;
+            final double valueImaginary = workImaginary[k] * normalization;
+            final double chirpReal = chirpCosines[k];
+            final double chirpImaginary = sign * chirpSines[k];
+            real[offset + stride * k] = valueReal * chirpReal - valueImaginary * chirpImaginary;
+            imaginary[offset + stride * k] = valueReal * chirpImaginary + valueImaginary * chirpReal;
+        }
+    }
+}
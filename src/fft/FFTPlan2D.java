@@ -0,0 +1,81 @@
+package fft;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pair of 1D plans for a row-major grid: {@link #rowPlan} transforms a row
+ * (length = columns), {@link #columnPlan} transforms a column (length = rows).
+ * <p>
+ * A plan may carry a pool; grids of at least {@link #parallelThreshold} points
+ * then have their row pass, column pass, shift and normalization split across
+ * it. Each row and column is still transformed by one thread with the same
+ * code, so parallel results are bit-identical to serial ones.
+ */
+public final class FFTPlan2D {
+    /**
+     * Grids smaller than this (in points) are not worth the task overhead
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 128 * 128;
+
+    public final int rows;
+    public final int columns;
+    public final FFTPlan rowPlan;
+    public final FFTPlan columnPlan;
+    /**
+     * null for a serial plan
+     */
+    public final ForkJoinPool pool;
+    public final int parallelThreshold;
+
+    private FFTPlan2D(int rows, int columns, ForkJoinPool pool, int parallelThreshold) {
+        this.rows = rows;
+        this.columns = columns;
+        this.rowPlan = FFTPlan.of(columns);
+        this.columnPlan = FFTPlan.of(rows);
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Serial plan
+     */
+    public static FFTPlan2D of(int rows, int columns) {
+        return new FFTPlan2D(rows, columns, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Plan on the common pool with {@link #DEFAULT_PARALLEL_THRESHOLD}
+     */
+    public static FFTPlan2D parallel(int rows, int columns) {
+        return new FFTPlan2D(rows, columns, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Same grid, run on the given pool once the grid has at least parallelThreshold points
+     */
+    public FFTPlan2D withPool(ForkJoinPool pool, int parallelThreshold) {
+        if (pool == null) throw new IllegalArgumentException("Use of() for a serial plan");
+        if (parallelThreshold < 0) throw new IllegalArgumentException();
+
+        return new FFTPlan2D(rows, columns, pool, parallelThreshold);
+    }
+
+    /**
+     * Plan for the transposed grid (columns x rows) on the same pool, e.g. to
+     * shift a spectrum produced by {@link FFT#fft2DTransposed}
+     */
+    public FFTPlan2D transposed() {
+        return new FFTPlan2D(columns, rows, pool, parallelThreshold);
+    }
+
+    public int numPoints() {
+        return rows * columns;
+    }
+
+    /**
+     * Pool to split passes over for this grid, or null if they should run serially
+     */
+    ForkJoinPool activePool() {
+        return numPoints() >= parallelThreshold ? pool : null;
+    }
+}
@@ -0,0 +1,69 @@
+package fft;
+
+/**
+ * Single-precision counterpart of {@link ComplexBuffer}, used by {@link FloatFFT}
+ */
+public final class FloatComplexBuffer {
+    public final float[] real;
+    public final float[] imaginary;
+
+    public FloatComplexBuffer(int length) {
+        this(new float[length], new float[length]);
+    }
+
+    public FloatComplexBuffer(float[] real, float[] imaginary) {
+        if (real.length != imaginary.length)
+            throw new IllegalArgumentException("Real and imaginary parts differ in length");
+
+        this.real = real;
+        this.imaginary = imaginary;
+    }
+
+    /**
+     * Rounds every value of data to float
+     */
+    public static FloatComplexBuffer fromDouble(ComplexBuffer data) {
+        final FloatComplexBuffer buffer = new FloatComplexBuffer(data.length());
+        for (int i = 0; i < data.length(); i++) {
+            buffer.real[i] = (float) data.real[i];
+            buffer.imaginary[i] = (float) data.imaginary[i];
+        }
+        return buffer;
+    }
+
+    public int length() {
+        return real.length;
+    }
+
+    public void copyTo(ComplexBuffer data) {
+        if (data.length() != length()) throw new IllegalArgumentException();
+
+        for (int i = 0; i < real.length; i++) {
+            data.real[i] = real[i];
+            data.imaginary[i] = imaginary[i];
+        }
+    }
+
+    /**
+     * Widened copy, for handing a single-precision result to code that takes a
+     * {@link ComplexBuffer}
+     */
+    public ComplexBuffer toDouble() {
+        final ComplexBuffer data = new ComplexBuffer(length());
+        copyTo(data);
+        return data;
+    }
+
+    /**
+     * Writes |z| of every element into {@code out}
+     */
+    public void modulus(float[] out) {
+        if (out.length != length()) throw new IllegalArgumentException();
+
+        for (int i = 0; i < out.length; i++) {
+            final float re = real[i];
+            final float im = imaginary[i];
+            out[i] = (float) java.lang.Math.sqrt(re * re + im * im);
+        }
+    }
+}
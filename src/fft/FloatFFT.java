@@ -0,0 +1,327 @@
+package fft;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Single-precision counterparts of the 2D transforms in {@link FFT}, with the
+ * same exponent signs, layouts and normalization. An {@link FFTPlan2D} supplies
+ * the grid size and pool; the lines are transformed with {@link FloatFFTPlan}s.
+ */
+public class FloatFFT {
+    /**
+     * Number of adjacent columns gathered together in the column pass
+     */
+    private static final int COLUMN_BLOCK = 16;
+    /**
+     * Side of the square tiles used by {@link #transpose}
+     */
+    private static final int TRANSPOSE_TILE = 32;
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void fft2D(FloatComplexBuffer data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != rows * columns) throw new IllegalArgumentException();
+
+        final ForkJoinPool pool = plan.activePool();
+        rowPass(data.real, data.imaginary, FloatFFTPlan.of(columns), rows, -1.0f, pool);
+        columnPass(data.real, data.imaginary, FloatFFTPlan.of(rows), columns, -1.0f, pool);
+    }
+
+    /**
+     * Same as {@link FFT#fft2DTransposed}
+     *
+     * @param data       row-major input, overwritten with intermediate values
+     * @param transposed receives the transposed spectrum
+     * @param plan
+     */
+    public static void fft2DTransposed(FloatComplexBuffer data, FloatComplexBuffer transposed, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != rows * columns) throw new IllegalArgumentException();
+        if (transposed.length() != rows * columns) throw new IllegalArgumentException();
+
+        final ForkJoinPool pool = plan.activePool();
+        rowPass(data.real, data.imaginary, FloatFFTPlan.of(columns), rows, -1.0f, pool);
+        transpose(data, transposed, rows, columns, pool);
+        rowPass(transposed.real, transposed.imaginary, FloatFFTPlan.of(rows), columns, -1.0f, pool);
+    }
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void ifft2D(FloatComplexBuffer data, FFTPlan2D plan) {
+        final int numPoints = plan.numPoints();
+        if (data.length() != numPoints) throw new IllegalArgumentException();
+
+        final float[] real = data.real;
+        final float[] imaginary = data.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        Parallel.forRange(pool, numPoints, (start, end) -> ComplexKernels.negate(imaginary, start, end));
+
+        fft2D(data, plan);
+
+        final float normalization = 1.0f / numPoints;
+        Parallel.forRange(pool, numPoints, (start, end) ->
+                ComplexKernels.scaleConjugate(real, imaginary, start, end, normalization));
+    }
+
+    /**
+     * Same as {@link FFT#ifft2DTransposed}
+     *
+     * @param transposed transposed spectrum, overwritten with intermediate values
+     * @param data       receives the field
+     * @param plan
+     */
+    public static void ifft2DTransposed(FloatComplexBuffer transposed, FloatComplexBuffer data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int numPoints = plan.numPoints();
+        if (data.length() != numPoints) throw new IllegalArgumentException();
+        if (transposed.length() != numPoints) throw new IllegalArgumentException();
+
+        final ForkJoinPool pool = plan.activePool();
+        final float[] transposedImaginary = transposed.imaginary;
+        Parallel.forRange(pool, numPoints, (start, end) -> ComplexKernels.negate(transposedImaginary, start, end));
+
+        rowPass(transposed.real, transposed.imaginary, FloatFFTPlan.of(rows), columns, -1.0f, pool);
+        transpose(transposed, data, columns, rows, pool);
+        rowPass(data.real, data.imaginary, FloatFFTPlan.of(columns), rows, -1.0f, pool);
+
+        final float normalization = 1.0f / numPoints;
+        final float[] real = data.real;
+        final float[] imaginary = data.imaginary;
+        Parallel.forRange(pool, numPoints, (start, end) ->
+                ComplexKernels.scaleConjugate(real, imaginary, start, end, normalization));
+    }
+
+    /**
+     * Same as {@link FFT#r2c2D}
+     *
+     * @param data         real input
+     * @param halfSpectrum receives the half spectrum, rows x {@link FFT#halfColumns}(columns)
+     * @param plan
+     */
+    public static void r2c2D(float[] data, FloatComplexBuffer halfSpectrum, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int halfColumns = FFT.halfColumns(columns);
+        if (data.length != rows * columns) throw new IllegalArgumentException();
+        if (halfSpectrum.length() != rows * halfColumns) throw new IllegalArgumentException();
+
+        final float[] spectrumReal = halfSpectrum.real;
+        final float[] spectrumImaginary = halfSpectrum.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        final FloatFFTPlan rowPlan = FloatFFTPlan.of(columns);
+
+        Parallel.forRange(pool, (rows + 1) / 2, (start, end) -> {
+            final FloatComplexBuffer line = rowPlan.lineScratch(1);
+            final float[] lineReal = line.real;
+            final float[] lineImaginary = line.imaginary;
+
+            for (int pair = start; pair < end; pair++) {
+                final int first = 2 * pair;
+                final boolean hasSecond = first + 1 < rows;
+
+                System.arraycopy(data, first * columns, lineReal, 0, columns);
+                if (hasSecond) System.arraycopy(data, (first + 1) * columns, lineImaginary, 0, columns);
+                else Arrays.fill(lineImaginary, 0, columns, 0.0f);
+
+                rowPlan.transform(lineReal, lineImaginary, 0, -1.0f);
+
+                for (int k = 0; k < halfColumns; k++) {
+                    final int mirror = k == 0 ? 0 : columns - k;
+                    final float real = lineReal[k];
+                    final float imaginary = lineImaginary[k];
+                    final float mirrorReal = lineReal[mirror];
+                    final float mirrorImaginary = -lineImaginary[mirror];
+
+                    spectrumReal[first * halfColumns + k] = 0.5f * (real + mirrorReal);
+                    spectrumImaginary[first * halfColumns + k] = 0.5f * (imaginary + mirrorImaginary);
+                    if (hasSecond) {
+                        spectrumReal[(first + 1) * halfColumns + k] = 0.5f * (imaginary - mirrorImaginary);
+                        spectrumImaginary[(first + 1) * halfColumns + k] = -0.5f * (real - mirrorReal);
+                    }
+                }
+            }
+        });
+
+        columnPass(spectrumReal, spectrumImaginary, FloatFFTPlan.of(rows), halfColumns, -1.0f, pool);
+    }
+
+    /**
+     * Same as {@link FFT#c2r2D}
+     *
+     * @param halfSpectrum half spectrum, overwritten with intermediate values
+     * @param data         receives the real field
+     * @param plan
+     */
+    public static void c2r2D(FloatComplexBuffer halfSpectrum, float[] data, FFTPlan2D plan) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final int halfColumns = FFT.halfColumns(columns);
+        final int numPoints = plan.numPoints();
+        if (data.length != numPoints) throw new IllegalArgumentException();
+        if (halfSpectrum.length() != rows * halfColumns) throw new IllegalArgumentException();
+
+        final float[] spectrumReal = halfSpectrum.real;
+        final float[] spectrumImaginary = halfSpectrum.imaginary;
+        final ForkJoinPool pool = plan.activePool();
+        final FloatFFTPlan rowPlan = FloatFFTPlan.of(columns);
+
+        columnPass(spectrumReal, spectrumImaginary, FloatFFTPlan.of(rows), halfColumns, 1.0f, pool);
+
+        final float normalization = 1.0f / numPoints;
+        Parallel.forRange(pool, (rows + 1) / 2, (start, end) -> {
+            final FloatComplexBuffer line = rowPlan.lineScratch(1);
+            final float[] lineReal = line.real;
+            final float[] lineImaginary = line.imaginary;
+
+            for (int pair = start; pair < end; pair++) {
+                final int first = 2 * pair;
+                final boolean hasSecond = first + 1 < rows;
+                final int firstBase = first * halfColumns;
+                final int secondBase = (first + 1) * halfColumns;
+
+                // rebuild Z = A + iB over the full row, as FFT#c2r2D does
+                for (int k = 0; k < columns; k++) {
+                    final boolean mirrored = k >= halfColumns;
+                    final int source = mirrored ? columns - k : k;
+                    final boolean selfConjugate = source == 0 || 2 * source == columns;
+                    final float conjugation = mirrored ? -1.0f : 1.0f;
+
+                    final float aReal = spectrumReal[firstBase + source];
+                    final float aImaginary = selfConjugate
+                            ? 0.0f
+                            : conjugation * spectrumImaginary[firstBase + source];
+                    float bReal = 0.0f;
+                    float bImaginary = 0.0f;
+                    if (hasSecond) {
+                        bReal = spectrumReal[secondBase + source];
+                        bImaginary = selfConjugate
+                                ? 0.0f
+                                : conjugation * spectrumImaginary[secondBase + source];
+                    }
+
+                    lineReal[k] = aReal - bImaginary;
+                    lineImaginary[k] = aImaginary + bReal;
+                }
+
+                rowPlan.transform(lineReal, lineImaginary, 0, 1.0f);
+
+                for (int x = 0; x < columns; x++)
+                    data[first * columns + x] = lineReal[x] * normalization;
+                if (hasSecond)
+                    for (int x = 0; x < columns; x++)
+                        data[(first + 1) * columns + x] = lineImaginary[x] * normalization;
+            }
+        });
+    }
+
+    /**
+     * Transforms each of the lines contiguous rows of data with plan, using the given exponent sign
+     */
+    private static void rowPass(
+            float[] real, float[] imaginary,
+            FloatFFTPlan plan, int lines, float sign,
+            ForkJoinPool pool
+    ) {
+        final int length = plan.length;
+        Parallel.forRange(pool, lines, (start, end) -> {
+            for (int line = start; line < end; line++)
+                plan.transform(real, imaginary, line * length, sign);
+        });
+    }
+
+    /**
+     * Transforms every column of a row-major grid with lines columns, gathering
+     * COLUMN_BLOCK columns at a time as {@link FFT} does
+     */
+    private static void columnPass(
+            float[] real, float[] imaginary,
+            FloatFFTPlan plan, int lines, float sign,
+            ForkJoinPool pool
+    ) {
+        final int length = plan.length;
+        final int blocks = (lines + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        Parallel.forRange(pool, blocks, (start, end) -> {
+            final FloatComplexBuffer scratch = plan.lineScratch(COLUMN_BLOCK);
+            final float[] scratchReal = scratch.real;
+            final float[] scratchImaginary = scratch.imaginary;
+
+            for (int block = start; block < end; block++) {
+                final int first = block * COLUMN_BLOCK;
+                final int width = java.lang.Math.min(COLUMN_BLOCK, lines - first);
+
+                for (int row = 0; row < length; row++) {
+                    final int base = row * lines + first;
+                    for (int column = 0; column < width; column++) {
+                        scratchReal[column * length + row] = real[base + column];
+                        scratchImaginary[column * length + row] = imaginary[base + column];
+                    }
+                }
+
+                for (int column = 0; column < width; column++)
+                    plan.transform(scratchReal, scratchImaginary, column * length, sign);
+
+                for (int row = 0; row < length; row++) {
+                    final int base = row * lines + first;
+                    for (int column = 0; column < width; column++) {
+                        real[base + column] = scratchReal[column * length + row];
+                        imaginary[base + column] = scratchImaginary[column * length + row];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the transpose of a row-major rows x columns grid into destination,
+     * which becomes row-major columns x rows
+     */
+    public static void transpose(FloatComplexBuffer source, FloatComplexBuffer destination, int rows, int columns) {
+        if (source.length() != rows * columns) throw new IllegalArgumentException();
+        if (destination.length() != rows * columns) throw new IllegalArgumentException();
+
+        transpose(source, destination, rows, columns, null);
+    }
+
+    private static void transpose(
+            FloatComplexBuffer source, FloatComplexBuffer destination,
+            int rows, int columns,
+            ForkJoinPool pool
+    ) {
+        final float[] sourceReal = source.real;
+        final float[] sourceImaginary = source.imaginary;
+        final float[] destinationReal = destination.real;
+        final float[] destinationImaginary = destination.imaginary;
+        final int tileRows = (rows + TRANSPOSE_TILE - 1) / TRANSPOSE_TILE;
+
+        Parallel.forRange(pool, tileRows, (start, end) -> {
+            for (int tileRow = start; tileRow < end; tileRow++) {
+                final int rowStart = tileRow * TRANSPOSE_TILE;
+                final int rowEnd = java.lang.Math.min(rowStart + TRANSPOSE_TILE, rows);
+
+                for (int columnStart = 0; columnStart < columns; columnStart += TRANSPOSE_TILE) {
+                    final int columnEnd = java.lang.Math.min(columnStart + TRANSPOSE_TILE, columns);
+
+                    // down the tile's columns, so the writes run contiguously in destination
+                    for (int column = columnStart; column < columnEnd; column++)
+                        for (int row = rowStart; row < rowEnd; row++) {
+                            destinationReal[column * rows + row] = sourceReal[row * columns + column];
+                            destinationImaginary[column * rows + row] = sourceImaginary[row * columns + column];
+                        }
+                }
+            }
+        });
+    }
+}
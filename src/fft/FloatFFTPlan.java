@@ -0,0 +1,465 @@
+package fft;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-precision counterpart of {@link FFTPlan}, with the same choice of
+ * kernel by length. Lines are always contiguous, which is all {@link FloatFFT}
+ * needs.
+ * <p>
+ * Tables are evaluated in double and rounded once, so the only float error is
+ * in the butterflies themselves. Powers of two use the radix-4 kernel of
+ * {@link FFTPlan}, with its twiddles always laid out per pass, and the
+ * Bluestein chirp spectra are computed by a double plan.
+ */
+public final class FloatFFTPlan {
+    private static final ConcurrentHashMap<Integer, FloatFFTPlan> CACHE = new ConcurrentHashMap<>();
+    /**
+     * Largest radix a MIXED_RADIX plan uses
+     */
+    private static final int MAX_RADIX = 7;
+
+    public final int length;
+    public final FFTPlan.Kernel kernel;
+    /**
+     * MIXED_RADIX: cos/sin(2 pi k / length) for k in [0, length)
+     */
+    private final float[] cosines;
+    private final float[] sines;
+    /**
+     * RADIX_4: twiddles of each pass as in {@link FFTPlan}, W^j of the pass with
+     * quarter-size q at offset q - 1, and W^(2j) and W^(3j) one and two blocks of
+     * length / 2 further
+     */
+    private final float[] stageCosines;
+    private final float[] stageSines;
+    /**
+     * RADIX_4: pairs (i, j), i < j, to swap after the butterflies
+     */
+    private final int[] swaps;
+    /**
+     * MIXED_RADIX: radices of the Stockham passes, in order
+     */
+    private final int[] radices;
+    /**
+     * BLUESTEIN: power-of-two plan the convolution runs on
+     */
+    private final FloatFFTPlan convolutionPlan;
+    /**
+     * BLUESTEIN: cos/sin(pi k^2 / length) for k in [0, length)
+     */
+    private final float[] chirpCosines;
+    private final float[] chirpSines;
+    /**
+     * BLUESTEIN: forward spectrum of the conjugate chirp, for exponent sign -1 and +1
+     */
+    private final FloatComplexBuffer negativeChirpSpectrum;
+    private final FloatComplexBuffer positiveChirpSpectrum;
+    /**
+     * MIXED_RADIX: per-thread interleaved scratch the line is copied into
+     */
+    private final ThreadLocal<float[]> scratch;
+    /**
+     * BLUESTEIN: per-thread buffer the convolution is evaluated in
+     */
+    private final ThreadLocal<FloatComplexBuffer> convolutionScratch;
+    /**
+     * per-thread lines staged by the 2D passes, see {@link #lineScratch}
+     */
+    private final ThreadLocal<FloatComplexBuffer> lineScratch = new ThreadLocal<>();
+
+    private FloatFFTPlan(int length) {
+        if (length <= 0) throw new IllegalArgumentException();
+
+        this.length = length;
+
+        if (Math.isPowerOfTwo(length)) {
+            kernel = FFTPlan.Kernel.RADIX_4;
+
+            final int half = length / 2;
+            stageCosines = new float[3 * half];
+            stageSines = new float[3 * half];
+            for (int quarter = length / 4; quarter >= 1; quarter /= 4) {
+                final int tableStep = length / (4 * quarter);
+                for (int j = 0; j < quarter; j++)
+                    for (int power = 1; power <= 3; power++) {
+                        final double angle = 2.0 * java.lang.Math.PI * (power * j * tableStep) / length;
+                        stageCosines[(power - 1) * half + quarter - 1 + j] = (float) java.lang.Math.cos(angle);
+                        stageSines[(power - 1) * half + quarter - 1 + j] = (float) java.lang.Math.sin(angle);
+                    }
+            }
+
+            final int[] pairs = new int[length];
+            int count = 0;
+            for (int i = 1, j = 0; i < length; i++) {
+                int bit = length >>> 1;
+                while ((j & bit) != 0) {
+                    j ^= bit;
+                    bit >>>= 1;
+                }
+                j ^= bit;
+
+                if (i < j) {
+                    pairs[count++] = i;
+                    pairs[count++] = j;
+                }
+            }
+            swaps = Arrays.copyOf(pairs, count);
+
+            cosines = null;
+            sines = null;
+            radices = null;
+            convolutionPlan = null;
+            chirpCosines = null;
+            chirpSines = null;
+            negativeChirpSpectrum = null;
+            positiveChirpSpectrum = null;
+            scratch = null;
+            convolutionScratch = null;
+        } else if (Math.isSmooth(length)) {
+            kernel = FFTPlan.Kernel.MIXED_RADIX;
+
+            cosines = new float[length];
+            sines = new float[length];
+            for (int k = 0; k < length; k++) {
+                final double angle = 2.0 * java.lang.Math.PI * k / length;
+                cosines[k] = (float) java.lang.Math.cos(angle);
+                sines[k] = (float) java.lang.Math.sin(angle);
+            }
+            radices = factor(length);
+
+            stageCosines = null;
+            stageSines = null;
+            swaps = null;
+            convolutionPlan = null;
+            chirpCosines = null;
+            chirpSines = null;
+            negativeChirpSpectrum = null;
+            positiveChirpSpectrum = null;
+            /*
+            two ping-pong buffers for the passes, plus room for one butterfly's inputs
+             */
+            scratch = ThreadLocal.withInitial(() -> new float[4 * length + 2 * MAX_RADIX]);
+            convolutionScratch = null;
+        } else {
+            kernel = FFTPlan.Kernel.BLUESTEIN;
+
+            /*
+            same convolution as FFTPlan's Bluestein kernel
+             */
+            final int convolutionLength = Math.nextPowerOfTwo(2 * length - 1);
+            convolutionPlan = FloatFFTPlan.of(convolutionLength);
+
+            final double[] exactCosines = new double[length];
+            final double[] exactSines = new double[length];
+            chirpCosines = new float[length];
+            chirpSines = new float[length];
+            for (int k = 0; k < length; k++) {
+                // k^2 mod 2n keeps the angle small so it does not lose precision
+                final long square = (long) k * k % (2L * length);
+                final double angle = java.lang.Math.PI * square / length;
+                exactCosines[k] = java.lang.Math.cos(angle);
+                exactSines[k] = java.lang.Math.sin(angle);
+                chirpCosines[k] = (float) exactCosines[k];
+                chirpSines[k] = (float) exactSines[k];
+            }
+
+            negativeChirpSpectrum = chirpSpectrum(exactCosines, exactSines, convolutionLength, -1.0);
+            positiveChirpSpectrum = chirpSpectrum(exactCosines, exactSines, convolutionLength, 1.0);
+
+            cosines = null;
+            sines = null;
+            stageCosines = null;
+            stageSines = null;
+            swaps = null;
+            radices = null;
+            scratch = null;
+            convolutionScratch = ThreadLocal.withInitial(() -> new FloatComplexBuffer(convolutionLength));
+        }
+    }
+
+    public static FloatFFTPlan of(int length) {
+        /*
+        not computeIfAbsent, for the same reason as FFTPlan.of
+         */
+        final FloatFFTPlan cached = CACHE.get(length);
+        if (cached != null) return cached;
+
+        final FloatFFTPlan plan = new FloatFFTPlan(length);
+        final FloatFFTPlan raced = CACHE.putIfAbsent(length, plan);
+        return raced != null ? raced : plan;
+    }
+
+    /**
+     * Same as {@link FFTPlan#lineScratch}
+     */
+    FloatComplexBuffer lineScratch(int lines) {
+        FloatComplexBuffer buffer = lineScratch.get();
+        if (buffer == null || buffer.length() < lines * length) {
+            buffer = new FloatComplexBuffer(lines * length);
+            lineScratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Splits a 2, 3, 5, 7-smooth length into radices, taking 4s first to
+     * halve the number of passes over powers of two
+     */
+    private static int[] factor(int length) {
+        final ArrayList<Integer> factors = new ArrayList<>();
+        int remaining = length;
+        for (int radix : new int[]{4, 2, 3, 5, 7})
+            while (remaining % radix == 0) {
+                factors.add(radix);
+                remaining /= radix;
+            }
+        if (remaining != 1) throw new IllegalStateException();
+
+        final int[] result = new int[factors.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = factors.get(i);
+        return result;
+    }
+
+    /**
+     * Forward spectrum of b_t = e^(-s pi i t^2 / n), laid out circularly for t in (-n, n),
+     * transformed in double and rounded
+     */
+    private static FloatComplexBuffer chirpSpectrum(
+            double[] chirpCosines, double[] chirpSines,
+            int convolutionLength, double sign
+    ) {
+        final int length = chirpCosines.length;
+        final ComplexBuffer chirp = new ComplexBuffer(convolutionLength);
+        for (int k = 0; k < length; k++) {
+            chirp.real[k] = chirpCosines[k];
+            chirp.imaginary[k] = -sign * chirpSines[k];
+            if (k > 0) {
+                chirp.real[convolutionLength - k] = chirpCosines[k];
+                chirp.imaginary[convolutionLength - k] = -sign * chirpSines[k];
+            }
+        }
+        FFTPlan.of(convolutionLength).transform(chirp.real, chirp.imaginary, 0, 1, -1.0);
+        return FloatComplexBuffer.fromDouble(chirp);
+    }
+
+    /**
+     * Does in-place transformation of the contiguous line of length values at offset.
+     * <p>
+     * DFT of
+     * c_k = sum_j y_j e^(sign 2 pi i j k / n)
+     * <p>
+     * Does not perform normalization
+     *
+     * @param real
+     * @param imaginary
+     * @param offset
+     * @param sign      sign of the exponent, 1.0f or -1.0f
+     */
+    public void transform(final float[] real, final float[] imaginary, final int offset, final float sign) {
+        if (length == 1) return;
+
+        switch (kernel) {
+            case RADIX_4 -> radix4(real, imaginary, offset, sign);
+            case MIXED_RADIX -> mixedRadix(real, imaginary, offset, sign);
+            case BLUESTEIN -> bluestein(real, imaginary, offset, sign);
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Radix-2^2 decimation in frequency, see {@link FFTPlan} for the butterfly.
+     * Passes with at least {@link ComplexKernels#FLOAT_LANES} butterflies per
+     * chunk run on {@link ComplexKernels#butterflies4}; the short ones near the
+     * end stay scalar.
+     */
+    private void radix4(final float[] real, final float[] imaginary, final int offset, final float sign) {
+        final int half = length / 2;
+        int chunk = length;
+        for (; chunk >= 4; chunk /= 4) {
+            final int quarter = chunk / 4;
+
+            if (quarter >= ComplexKernels.FLOAT_LANES) {
+                for (int i = 0; i < length; i += chunk)
+                    ComplexKernels.butterflies4(
+                            real, imaginary,
+                            offset + i, quarter,
+                            stageCosines, stageSines, quarter - 1, half,
+                            quarter, sign
+                    );
+                continue;
+            }
+
+            for (int i = 0; i < length; i += chunk) {
+                butterfly4(real, imaginary, offset + i, quarter, sign);
+                if (quarter > 1)
+                    ComplexKernels.butterflies4(
+                            real, imaginary,
+                            offset + i + 1, quarter,
+                            stageCosines, stageSines, quarter, half,
+                            quarter - 1, sign
+                    );
+            }
+        }
+
+        if (chunk == 2)
+            for (int i = 0; i < length; i += 2) {
+                final int evenIndex = offset + i;
+                final int oddIndex = evenIndex + 1;
+                final float evenReal = real[evenIndex];
+                final float evenImaginary = imaginary[evenIndex];
+                final float oddReal = real[oddIndex];
+                final float oddImaginary = imaginary[oddIndex];
+
+                real[evenIndex] = evenReal + oddReal;
+                imaginary[evenIndex] = evenImaginary + oddImaginary;
+                real[oddIndex] = evenReal - oddReal;
+                imaginary[oddIndex] = evenImaginary - oddImaginary;
+            }
+
+        for (int p = 0; p < swaps.length; p += 2) {
+            final int a = offset + swaps[p];
+            final int b = offset + swaps[p + 1];
+            float tmp = real[a];
+            real[a] = real[b];
+            real[b] = tmp;
+            tmp = imaginary[a];
+            imaginary[a] = imaginary[b];
+            imaginary[b] = tmp;
+        }
+    }
+
+    /**
+     * Radix-4 butterfly of {@link #radix4} at j = 0, where every twiddle is 1
+     */
+    private static void butterfly4(
+            final float[] real,
+            final float[] imaginary,
+            final int index,
+            final int quarter,
+            final float sign
+    ) {
+        final int index1 = index + quarter;
+        final int index2 = index1 + quarter;
+        final int index3 = index2 + quarter;
+
+        final float sumReal = real[index] + real[index2];
+        final float sumImaginary = imaginary[index] + imaginary[index2];
+        final float differenceReal = real[index] - real[index2];
+        final float differenceImaginary = imaginary[index] - imaginary[index2];
+        final float oddSumReal = real[index1] + real[index3];
+        final float oddSumImaginary = imaginary[index1] + imaginary[index3];
+        final float rotatedReal = -sign * (imaginary[index1] - imaginary[index3]);
+        final float rotatedImaginary = sign * (real[index1] - real[index3]);
+
+        real[index] = sumReal + oddSumReal;
+        imaginary[index] = sumImaginary + oddSumImaginary;
+        real[index1] = sumReal - oddSumReal;
+        imaginary[index1] = sumImaginary - oddSumImaginary;
+        real[index2] = differenceReal + rotatedReal;
+        imaginary[index2] = differenceImaginary + rotatedImaginary;
+        real[index3] = differenceReal - rotatedReal;
+        imaginary[index3] = differenceImaginary - rotatedImaginary;
+    }
+
+    /**
+     * Stockham decimation in frequency, see {@link FFTPlan} for the pass formula
+     */
+    private void mixedRadix(final float[] real, final float[] imaginary, final int offset, final float sign) {
+        final float[] work = scratch.get();
+        int from = 0;
+        int to = 2 * length;
+        final int butterfly = 4 * length;
+
+        for (int i = 0; i < length; i++) {
+            work[2 * i] = real[offset + i];
+            work[2 * i + 1] = imaginary[offset + i];
+        }
+
+        int n = length;
+        int s = 1;
+        for (final int radix : radices) {
+            final int m = n / radix;
+            final int rootStep = length / radix;
+
+            for (int p = 0; p < m; p++)
+                for (int q = 0; q < s; q++) {
+                    for (int j = 0; j < radix; j++) {
+                        final int source = from + 2 * (q + s * (p + j * m));
+                        work[butterfly + 2 * j] = work[source];
+                        work[butterfly + 2 * j + 1] = work[source + 1];
+                    }
+
+                    for (int k = 0; k < radix; k++) {
+                        float sumReal = 0.0f;
+                        float sumImaginary = 0.0f;
+                        for (int j = 0; j < radix; j++) {
+                            final int root = (j * k % radix) * rootStep;
+                            final float rootReal = cosines[root];
+                            final float rootImaginary = sign * sines[root];
+                            final float valueReal = work[butterfly + 2 * j];
+                            final float valueImaginary = work[butterfly + 2 * j + 1];
+                            sumReal += valueReal * rootReal - valueImaginary * rootImaginary;
+                            sumImaginary += valueReal * rootImaginary + valueImaginary * rootReal;
+                        }
+
+                        final int twiddle = p * k * s;
+                        final float twiddleReal = cosines[twiddle];
+                        final float twiddleImaginary = sign * sines[twiddle];
+                        final int target = to + 2 * (q + s * (radix * p + k));
+                        work[target] = sumReal * twiddleReal - sumImaginary * twiddleImaginary;
+                        work[target + 1] = sumReal * twiddleImaginary + sumImaginary * twiddleReal;
+                    }
+                }
+
+            n = m;
+            s *= radix;
+            final int tmp = from;
+            from = to;
+            to = tmp;
+        }
+
+        for (int i = 0; i < length; i++) {
+            real[offset + i] = work[from + 2 * i];
+            imaginary[offset + i] = work[from + 2 * i + 1];
+        }
+    }
+
+    private void bluestein(final float[] real, final float[] imaginary, final int offset, final float sign) {
+        final int convolutionLength = convolutionPlan.length;
+        final FloatComplexBuffer work = convolutionScratch.get();
+        final float[] workReal = work.real;
+        final float[] workImaginary = work.imaginary;
+
+        for (int j = 0; j < length; j++) {
+            final float valueReal = real[offset + j];
+            final float valueImaginary = imaginary[offset + j];
+            final float chirpReal = chirpCosines[j];
+            final float chirpImaginary = sign * chirpSines[j];
+            workReal[j] = valueReal * chirpReal - valueImaginary * chirpImaginary;
+            workImaginary[j] = valueReal * chirpImaginary + valueImaginary * chirpReal;
+        }
+        Arrays.fill(workReal, length, convolutionLength, 0.0f);
+        Arrays.fill(workImaginary, length, convolutionLength, 0.0f);
+
+        convolutionPlan.transform(workReal, workImaginary, 0, -1.0f);
+
+        final FloatComplexBuffer chirpSpectrum = sign < 0 ? negativeChirpSpectrum : positiveChirpSpectrum;
+        ComplexKernels.multiply(workReal, workImaginary, chirpSpectrum.real, chirpSpectrum.imaginary, 0, convolutionLength);
+
+        convolutionPlan.transform(workReal, workImaginary, 0, 1.0f);
+
+        final float normalization = 1.0f / convolutionLength;
+        for (int k = 0; k < length; k++) {
+            final float valueReal = workReal[k] * normalization;
+            final float valueImaginary = workImaginary[k] * normalization;
+            final float chirpReal = chirpCosines[k];
+            final float chirpImaginary = sign * chirpSines[k];
+            real[offset + k] = valueReal * chirpReal - valueImaginary * chirpImaginary;
+            imaginary[offset + k] = valueReal * chirpImaginary + valueImaginary * chirpReal;
+        }
+    }
+}
@@ -4,4 +4,22 @@ public class Math {
     public static boolean isPowerOfTwo(int n) {
         return (n > 0) && ((n & (n - 1)) == 0);
     }
-}
\ No newline at end of file
+
+    /**
+     * Smallest power of two that is at least n
+     */
+    public static int nextPowerOfTwo(int n) {
+        if (n <= 1) return 1;
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Whether n has no prime factors other than 2, 3, 5 and 7
+     */
+    public static boolean isSmooth(int n) {
+        if (n <= 0) return false;
+        for (int prime : new int[]{2, 3, 5, 7})
+            while (n % prime == 0) n /= prime;
+        return n == 1;
+    }
+}
@@ -0,0 +1,73 @@
+package fft;
+
+/**
+ * Rectangle of the observation plane to evaluate a field on, and its sampling.
+ * <p>
+ * Coordinates are those of a {@link PropagationGeometry}, where the grid covers
+ * [-extentX, extentX) x [-extentY, extentY). Sample (m_x, m_y) is at
+ * (minX + m_x (maxX - minX) / resolutionX, minY + m_y (maxY - minY) / resolutionY),
+ * the same convention as the grid, so {@link #of(PropagationGeometry)} gives the
+ * grid itself. The propagated field is periodic over the grid, so a window
+ * reaching outside of it sees the wrapped-around field.
+ *
+ * @param minX        left edge
+ * @param minY        top edge
+ * @param maxX        right edge
+ * @param maxY        bottom edge
+ * @param resolutionX the number of points across
+ * @param resolutionY the number of points down
+ */
+public value record ObservationWindow(
+        double minX,
+        double minY,
+        double maxX,
+        double maxY,
+        int resolutionX,
+        int resolutionY
+) {
+    public ObservationWindow {
+        if (resolutionX <= 0 || resolutionY <= 0)
+            throw new IllegalArgumentException("Resolution must be positive");
+        if (!(maxX > minX) || !(maxY > minY))
+            throw new IllegalArgumentException("Window must have a positive size");
+    }
+
+    /**
+     * The whole grid of geometry
+     */
+    public static ObservationWindow of(PropagationGeometry geometry) {
+        return new ObservationWindow(
+                -geometry.extentX(), -geometry.extentY(),
+                geometry.extentX(), geometry.extentY(),
+                geometry.resolutionX(), geometry.resolutionY()
+        );
+    }
+
+    public int numPoints() {
+        return resolutionX * resolutionY;
+    }
+
+    /**
+     * {@link ChirpZ} from the x frequencies of geometry to the columns of this window
+     */
+    ChirpZ alongX(PropagationGeometry geometry) {
+        final double spacing = 2.0 * geometry.extentX() / geometry.resolutionX();
+        return ChirpZ.of(
+                geometry.resolutionX(), resolutionX,
+                (minX + geometry.extentX()) / spacing,
+                (maxX - minX) / resolutionX / spacing
+        );
+    }
+
+    /**
+     * {@link ChirpZ} from the y frequencies of geometry to the rows of this window
+     */
+    ChirpZ alongY(PropagationGeometry geometry) {
+        final double spacing = 2.0 * geometry.extentY() / geometry.resolutionY();
+        return ChirpZ.of(
+                geometry.resolutionY(), resolutionY,
+                (minY + geometry.extentY()) / spacing,
+                (maxY - minY) / resolutionY / spacing
+        );
+    }
+}
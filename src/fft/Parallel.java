@@ -0,0 +1,71 @@
+package fft;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range [0, count) into fork/join tasks.
+ * <p>
+ * Every index is handled by exactly one call of the body, and the body sees the
+ * same inputs regardless of how the range was split, so results do not depend on
+ * the number of threads.
+ */
+final class Parallel {
+    @FunctionalInterface
+    interface RangeBody {
+        void run(int start, int end);
+    }
+
+    private Parallel() {
+    }
+
+    /**
+     * Runs body over [0, count), on the pool if it is not null
+     *
+     * @param pool  pool to run on, or null to run on the calling thread
+     * @param count number of indices
+     * @param body  called with disjoint [start, end) ranges covering [0, count)
+     */
+    static void forRange(ForkJoinPool pool, int count, RangeBody body) {
+        if (pool == null || count <= 1) {
+            body.run(0, count);
+            return;
+        }
+
+        final int grain = java.lang.Math.max(1, count / (pool.getParallelism() * 4));
+        pool.invoke(new RangeTask(body, 0, count, grain));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        // tasks only ever run in this process
+        private final transient RangeBody body;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        RangeTask(RangeBody body, int start, int end, int grain) {
+            this.body = body;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                body.run(start, end);
+                return;
+            }
+
+            final int middle = (start + end) >>> 1;
+            invokeAll(
+                    new RangeTask(body, start, middle, grain),
+                    new RangeTask(body, middle, end, grain)
+            );
+        }
+    }
+}
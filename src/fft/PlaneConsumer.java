@@ -0,0 +1,16 @@
+package fft;
+
+/**
+ * Receives the planes of a z-stack one distance at a time, so the stack never
+ * has to be held in memory at once
+ */
+@FunctionalInterface
+public interface PlaneConsumer {
+    /**
+     * @param index    index of distance in the requested distances
+     * @param distance observation distance from incident
+     * @param field    observed field; the buffer is overwritten by the next plane,
+     *                 so copy out anything that has to outlive this call
+     */
+    void accept(int index, double distance, ComplexBuffer field);
+}
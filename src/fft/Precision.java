@@ -0,0 +1,21 @@
+package fft;
+
+/**
+ * Floating-point type a propagation is carried out in
+ */
+public enum Precision {
+    /**
+     * double throughout, see {@link FFT}
+     */
+    DOUBLE,
+    /**
+     * float fields and transforms, see {@link FloatFFT}. The grid-sized buffers
+     * take half the memory and the transforms run on twice the SIMD lanes, but
+     * the incident field and the transfer function are still evaluated in
+     * double, so a whole propagation is only about 1.1-1.5x faster at 1024^2
+     * and above, and no faster on small grids (see benchmark.PrecisionCheck).
+     * Relative errors are around 1e-7 instead of 1e-15: enough for rendering,
+     * not for accumulating many planes or long sweeps of differences.
+     */
+    FLOAT
+}
@@ -0,0 +1,56 @@
+package fft;
+
+import java.lang.Math;
+
+/**
+ * Physical size and sampling of a propagation grid
+ *
+ * @param extentX     half the x-size of the simulation
+ * @param extentY     half the y-size of the simulation
+ * @param resolutionX the number of points used to represent the X direction
+ * @param resolutionY the number of points used to represent the Y direction
+ */
+public value record PropagationGeometry(
+        double extentX,
+        double extentY,
+        int resolutionX,
+        int resolutionY
+) {
+    public PropagationGeometry {
+        if (resolutionX <= 0 || resolutionY <= 0)
+            throw new IllegalArgumentException("Resolution must be positive");
+    }
+
+    public int numPoints() {
+        return resolutionX * resolutionY;
+    }
+
+    /**
+     * Same grid with x and y swapped. k_z is symmetric in the two, so a
+     * {@link TransferFunction} over the transposed geometry is the transfer
+     * function laid out like a transposed spectrum (see {@link FFT#fft2DTransposed}).
+     */
+    public PropagationGeometry transposed() {
+        return new PropagationGeometry(extentY, extentX, resolutionY, resolutionX);
+    }
+
+    /**
+     * k_z for the bin at centered indices (shiftedX, shiftedY), where
+     * k_z = sqrt(((2pi)/wavelength)^2 - (pi n_x / L_x)^2 - (pi n_y / L_y)^2)
+     */
+    public double frequencyZ(double wavelength, int shiftedX, int shiftedY) {
+        final double pi = Math.PI;
+        return Math.sqrt(
+                (4.0 * pi * pi) / wavelength / wavelength -
+                        pi * pi * shiftedX * shiftedX / extentX / extentX -
+                        pi * pi * shiftedY * shiftedY / extentY / extentY
+        );
+    }
+
+    /**
+     * k_z L for the bin at centered indices (shiftedX, shiftedY), see {@link #frequencyZ}
+     */
+    public double transferAngle(double wavelength, double distance, int shiftedX, int shiftedY) {
+        return frequencyZ(wavelength, shiftedX, shiftedY) * distance;
+    }
+}
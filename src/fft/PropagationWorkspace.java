@@ -0,0 +1,30 @@
+package fft;
+
+/**
+ * Working memory of one {@link AngularSpectrumPropagator} call: the two half
+ * spectra the transfer function is multiplied into, and room for the transfer
+ * function over one quadrant. Handing the same workspace to every call of a
+ * sweep (see {@link AngularSpectrumPropagator#newWorkspace}) keeps the sweep
+ * from allocating per wavelength.
+ * <p>
+ * A workspace may only be used by one call at a time.
+ */
+public final class PropagationWorkspace {
+    final ComplexBuffer cosineSpectrum;
+    final ComplexBuffer sineSpectrum;
+    final double[] quadrantFrequencyZ;
+    final double[] quadrantCosines;
+    final double[] quadrantSines;
+
+    PropagationWorkspace(int halfSpectrumLength, int quadrantLength) {
+        this.cosineSpectrum = new ComplexBuffer(halfSpectrumLength);
+        this.sineSpectrum = new ComplexBuffer(halfSpectrumLength);
+        this.quadrantFrequencyZ = new double[quadrantLength];
+        this.quadrantCosines = new double[quadrantLength];
+        this.quadrantSines = new double[quadrantLength];
+    }
+
+    int length() {
+        return cosineSpectrum.length();
+    }
+}
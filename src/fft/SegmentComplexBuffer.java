@@ -0,0 +1,125 @@
+package fft;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link ComplexBuffer} stored outside the Java heap, as two segments of
+ * doubles, for grids whose fields do not fit on the heap.
+ * <p>
+ * The memory belongs to the {@link Arena} the buffer was made in and is released
+ * when that arena is closed; the buffer must not be used afterwards. A confined
+ * arena can only be touched by the thread that opened it, so transforms on a
+ * parallel {@link FFTPlan2D} need a shared arena.
+ */
+public final class SegmentComplexBuffer {
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+    public final MemorySegment real;
+    public final MemorySegment imaginary;
+    private final int length;
+
+    private SegmentComplexBuffer(MemorySegment real, MemorySegment imaginary, int length) {
+        this.real = real;
+        this.imaginary = imaginary;
+        this.length = length;
+    }
+
+    /**
+     * Zeroed buffer in native memory
+     */
+    public static SegmentComplexBuffer allocate(Arena arena, int length) {
+        if (length < 0) throw new IllegalArgumentException();
+
+        final long bytes = DOUBLE.byteSize() * length;
+        return new SegmentComplexBuffer(
+                arena.allocate(bytes, DOUBLE.byteAlignment()),
+                arena.allocate(bytes, DOUBLE.byteAlignment()),
+                length
+        );
+    }
+
+    /**
+     * Buffer backed by file, which is created or resized to hold it: the real
+     * parts, then the imaginary parts. Pages are read and written back by the
+     * operating system as needed, so the grid is only limited by disk space.
+     * The file is left in place when the arena closes.
+     */
+    public static SegmentComplexBuffer map(Arena arena, Path file, int length) throws IOException {
+        if (length < 0) throw new IllegalArgumentException();
+
+        final long bytes = DOUBLE.byteSize() * length;
+        try (FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            final MemorySegment segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * bytes, arena);
+            return new SegmentComplexBuffer(segment.asSlice(0, bytes), segment.asSlice(bytes, bytes), length);
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double real(int index) {
+        return real.getAtIndex(DOUBLE, index);
+    }
+
+    public double imaginary(int index) {
+        return imaginary.getAtIndex(DOUBLE, index);
+    }
+
+    public void set(int index, double realValue, double imaginaryValue) {
+        real.setAtIndex(DOUBLE, index, realValue);
+        imaginary.setAtIndex(DOUBLE, index, imaginaryValue);
+    }
+
+    /**
+     * Copies count values from index into the arrays at offset
+     */
+    public void read(int index, double[] realOut, double[] imaginaryOut, int offset, int count) {
+        MemorySegment.copy(real, DOUBLE, DOUBLE.byteSize() * index, realOut, offset, count);
+        MemorySegment.copy(imaginary, DOUBLE, DOUBLE.byteSize() * index, imaginaryOut, offset, count);
+    }
+
+    /**
+     * Copies count values from the arrays at offset to index
+     */
+    public void write(int index, double[] realIn, double[] imaginaryIn, int offset, int count) {
+        MemorySegment.copy(realIn, offset, real, DOUBLE, DOUBLE.byteSize() * index, count);
+        MemorySegment.copy(imaginaryIn, offset, imaginary, DOUBLE, DOUBLE.byteSize() * index, count);
+    }
+
+    public void copyFrom(ComplexBuffer data) {
+        if (data.length() != length) throw new IllegalArgumentException();
+
+        write(0, data.real, data.imaginary, 0, length);
+    }
+
+    public void copyTo(ComplexBuffer data) {
+        if (data.length() != length) throw new IllegalArgumentException();
+
+        read(0, data.real, data.imaginary, 0, length);
+    }
+
+    /**
+     * Writes |z| of every element into {@code out}
+     */
+    public void modulus(double[] out) {
+        if (out.length != length) throw new IllegalArgumentException();
+
+        for (int i = 0; i < length; i++) {
+            final double re = real(i);
+            final double im = imaginary(i);
+            out[i] = java.lang.Math.sqrt(re * re + im * im);
+        }
+    }
+}
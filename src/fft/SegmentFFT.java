@@ -0,0 +1,207 @@
+package fft;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 2D transforms of {@link SegmentComplexBuffer}s, with the same exponent signs
+ * and normalization as {@link FFT}.
+ * <p>
+ * The kernels work on heap arrays, so each line is staged through a per-thread
+ * scratch row, or COLUMN_BLOCK columns at a time for the column pass as in
+ * {@link FFT}. Scratch is the plans' {@link FFTPlan#lineScratch}, a few lines
+ * long and kept from one call to the next, so the heap holds nothing of the
+ * grid's size. Every pass reads and writes the whole segment once; that is
+ * what to minimise when the buffer is file-backed, see {@link #filter2D}.
+ */
+public class SegmentFFT {
+    /**
+     * Number of adjacent columns gathered together in the column pass
+     */
+    private static final int COLUMN_BLOCK = 16;
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void fft2D(SegmentComplexBuffer data, FFTPlan2D plan) {
+        if (data.length() != plan.numPoints()) throw new IllegalArgumentException();
+
+        final ForkJoinPool pool = plan.activePool();
+        rowPass(data, plan, -1.0, 1.0, pool);
+        columnPass(data, plan, -1.0, pool);
+    }
+
+    /**
+     * Expects row-major data of plan.rows x plan.columns
+     *
+     * @param data
+     * @param plan
+     */
+    public static void ifft2D(SegmentComplexBuffer data, FFTPlan2D plan) {
+        if (data.length() != plan.numPoints()) throw new IllegalArgumentException();
+
+        /*
+        conj(F(conj(y))) is the transform with the positive exponent, so
+        instead of two conjugating passes the lines are transformed with sign +1
+         */
+        final ForkJoinPool pool = plan.activePool();
+        columnPass(data, plan, 1.0, pool);
+        rowPass(data, plan, 1.0, 1.0 / plan.numPoints(), pool);
+    }
+
+    /**
+     * ifft2D(H fft2D(data)) in place, for a filter H that only depends on |k_x| and
+     * |k_y|, e.g. the angular spectrum transfer function.
+     * <p>
+     * The column passes of both transforms and the multiply are done on the same
+     * gathered block, so the grid is only passed over three times instead of five.
+     *
+     * @param data            row-major data of plan.rows x plan.columns
+     * @param plan
+     * @param filterReal      real part of H over the quadrant of non-negative
+     *                        frequencies, (rows / 2 + 1) x (columns / 2 + 1)
+     * @param filterImaginary imaginary part of H, same layout
+     */
+    public static void filter2D(
+            SegmentComplexBuffer data,
+            FFTPlan2D plan,
+            double[] filterReal,
+            double[] filterImaginary
+    ) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        if (data.length() != plan.numPoints()) throw new IllegalArgumentException();
+        if (filterReal.length != (rows / 2 + 1) * (columns / 2 + 1)) throw new IllegalArgumentException();
+        if (filterImaginary.length != filterReal.length) throw new IllegalArgumentException();
+
+        final int[] rowOffsets = TransferFunction.quadrantRowOffsets(rows, columns);
+        final int[] columnIndices = TransferFunction.quadrantColumnIndices(columns);
+        final FFTPlan columnPlan = plan.columnPlan;
+        final ForkJoinPool pool = plan.activePool();
+
+        rowPass(data, plan, -1.0, 1.0, pool);
+
+        final int blocks = (columns + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        final int blockLines = blockLines(rows);
+        Parallel.forRange(pool, blocks, (start, end) -> {
+            final ComplexBuffer scratch = columnPlan.lineScratch(blockLines);
+
+            for (int block = start; block < end; block++) {
+                final int first = block * COLUMN_BLOCK;
+                final int width = java.lang.Math.min(COLUMN_BLOCK, columns - first);
+
+                gather(data, scratch, first, width, rows, columns);
+                for (int column = 0; column < width; column++) {
+                    final int offset = column * rows;
+                    columnPlan.transform(scratch.real, scratch.imaginary, offset, 1, -1.0);
+
+                    final int columnIndex = columnIndices[first + column];
+                    for (int row = 0; row < rows; row++) {
+                        final int quadrantIndex = rowOffsets[row] + columnIndex;
+                        final double factorReal = filterReal[quadrantIndex];
+                        final double factorImaginary = filterImaginary[quadrantIndex];
+                        final double valueReal = scratch.real[offset + row];
+                        final double valueImaginary = scratch.imaginary[offset + row];
+                        scratch.real[offset + row] = valueReal * factorReal - valueImaginary * factorImaginary;
+                        scratch.imaginary[offset + row] = valueReal * factorImaginary + valueImaginary * factorReal;
+                    }
+
+                    columnPlan.transform(scratch.real, scratch.imaginary, offset, 1, 1.0);
+                }
+                scatter(scratch, data, first, width, rows, columns);
+            }
+        });
+
+        rowPass(data, plan, 1.0, 1.0 / plan.numPoints(), pool);
+    }
+
+    /**
+     * Transforms every row with the given exponent sign, then multiplies it by scale
+     */
+    private static void rowPass(
+            SegmentComplexBuffer data, FFTPlan2D plan,
+            double sign, double scale,
+            ForkJoinPool pool
+    ) {
+        final int columns = plan.columns;
+        final FFTPlan rowPlan = plan.rowPlan;
+        Parallel.forRange(pool, plan.rows, (start, end) -> {
+            final ComplexBuffer line = rowPlan.lineScratch(1);
+            for (int row = start; row < end; row++) {
+                data.read(row * columns, line.real, line.imaginary, 0, columns);
+                rowPlan.transform(line.real, line.imaginary, 0, 1, sign);
+                if (scale != 1.0) line.scale(scale);
+                data.write(row * columns, line.real, line.imaginary, 0, columns);
+            }
+        });
+    }
+
+    /**
+     * Transforms every column with the given exponent sign
+     */
+    private static void columnPass(SegmentComplexBuffer data, FFTPlan2D plan, double sign, ForkJoinPool pool) {
+        final int rows = plan.rows;
+        final int columns = plan.columns;
+        final FFTPlan columnPlan = plan.columnPlan;
+        final int blocks = (columns + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+        final int blockLines = blockLines(rows);
+        Parallel.forRange(pool, blocks, (start, end) -> {
+            final ComplexBuffer scratch = columnPlan.lineScratch(blockLines);
+
+            for (int block = start; block < end; block++) {
+                final int first = block * COLUMN_BLOCK;
+                final int width = java.lang.Math.min(COLUMN_BLOCK, columns - first);
+
+                gather(data, scratch, first, width, rows, columns);
+                for (int column = 0; column < width; column++)
+                    columnPlan.transform(scratch.real, scratch.imaginary, column * rows, 1, sign);
+                scatter(scratch, data, first, width, rows, columns);
+            }
+        });
+    }
+
+    /**
+     * Lines of length rows to ask {@link FFTPlan#lineScratch} for: COLUMN_BLOCK
+     * columns, then room to stage COLUMN_BLOCK values of one row
+     */
+    private static int blockLines(int rows) {
+        return COLUMN_BLOCK + (COLUMN_BLOCK + rows - 1) / rows;
+    }
+
+    /**
+     * Copies columns [first, first + width) into scratch, one contiguous column
+     * after another, staging each row after the block
+     */
+    private static void gather(
+            SegmentComplexBuffer data, ComplexBuffer scratch,
+            int first, int width, int rows, int columns
+    ) {
+        final int line = COLUMN_BLOCK * rows;
+        for (int row = 0; row < rows; row++) {
+            data.read(row * columns + first, scratch.real, scratch.imaginary, line, width);
+            for (int column = 0; column < width; column++) {
+                scratch.real[column * rows + row] = scratch.real[line + column];
+                scratch.imaginary[column * rows + row] = scratch.imaginary[line + column];
+            }
+        }
+    }
+
+    /**
+     * Inverse of {@link #gather}
+     */
+    private static void scatter(
+            ComplexBuffer scratch, SegmentComplexBuffer data,
+            int first, int width, int rows, int columns
+    ) {
+        final int line = COLUMN_BLOCK * rows;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < width; column++) {
+                scratch.real[line + column] = scratch.real[column * rows + row];
+                scratch.imaginary[line + column] = scratch.imaginary[column * rows + row];
+            }
+            data.write(row * columns + first, scratch.real, scratch.imaginary, line, width);
+        }
+    }
+}
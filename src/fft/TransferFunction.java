@@ -0,0 +1,136 @@
+package fft;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.lang.Math;
+
+/**
+ * e^(i k_z L) sampled on a propagation grid, as separate cos and sin tables.
+ * <p>
+ * Tables are row-major resolutionY x resolutionX in the unshifted order the FFT
+ * produces, i.e. bin (y, x) holds the centered frequency
+ * ((y + N_y / 2) mod N_y - N_y / 2, same for x), so spectra can be multiplied
+ * without {@link FFT#shiftCenter}.
+ */
+public final class TransferFunction {
+    public final int rows;
+    public final int columns;
+    public final double[] cosines;
+    public final double[] sines;
+
+    private TransferFunction(int rows, int columns, double[] cosines, double[] sines) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cosines = cosines;
+        this.sines = sines;
+    }
+
+    /**
+     * @param geometry   grid the transfer function is sampled on
+     * @param wavelength wavelength of monochromatic light
+     * @param distance   observation distance from incident
+     */
+    public static TransferFunction compute(PropagationGeometry geometry, double wavelength, double distance) {
+        final Metrics.Span span = Metrics.start(Stage.TRANSFER_FUNCTION);
+        final TransferFunction transfer = compute(geometry, quadrantFrequencyZ(geometry, wavelength), distance);
+        Metrics.stop(span);
+        return transfer;
+    }
+
+    /**
+     * Same as {@link #compute(PropagationGeometry, double, double)}, from a table
+     * made by {@link #quadrantFrequencyZ}
+     */
+    static TransferFunction compute(PropagationGeometry geometry, double[] quadrantFrequencyZ, double distance) {
+        final int rows = geometry.resolutionY();
+        final int columns = geometry.resolutionX();
+        final double[] cosines = new double[rows * columns];
+        final double[] sines = new double[rows * columns];
+
+        final double[] quadrantCosines = new double[quadrantFrequencyZ.length];
+        final double[] quadrantSines = new double[quadrantFrequencyZ.length];
+        quadrantAngles(quadrantFrequencyZ, distance, quadrantCosines, quadrantSines);
+
+        final int[] rowOffsets = quadrantRowOffsets(rows, columns);
+        final int[] columnIndices = quadrantColumnIndices(columns);
+        for (int y = 0; y < rows; y++)
+            for (int x = 0; x < columns; x++) {
+                final int quadrantIndex = rowOffsets[y] + columnIndices[x];
+                cosines[y * columns + x] = quadrantCosines[quadrantIndex];
+                sines[y * columns + x] = quadrantSines[quadrantIndex];
+            }
+
+        return new TransferFunction(rows, columns, cosines, sines);
+    }
+
+    /*
+    k_z only depends on |n_x| and |n_y|, so it is evaluated on one quadrant,
+    (rows / 2 + 1) x (columns / 2 + 1), and every bin is mapped onto it with
+    quadrantRowOffsets[y] + quadrantColumnIndices[x]
+     */
+
+    /**
+     * k_z over the quadrant of non-negative frequencies; k_z does not depend on
+     * distance, so one table serves every distance at this wavelength
+     */
+    static double[] quadrantFrequencyZ(PropagationGeometry geometry, double wavelength) {
+        final double[] frequencyZ = new double[quadrantLength(geometry)];
+        quadrantFrequencyZ(geometry, wavelength, frequencyZ);
+        return frequencyZ;
+    }
+
+    /**
+     * Same as {@link #quadrantFrequencyZ(PropagationGeometry, double)}, into frequencyZ
+     */
+    static void quadrantFrequencyZ(PropagationGeometry geometry, double wavelength, double[] frequencyZ) {
+        final int quadrantColumns = geometry.resolutionX() / 2 + 1;
+        final int quadrantRows = geometry.resolutionY() / 2 + 1;
+        if (frequencyZ.length != quadrantRows * quadrantColumns) throw new IllegalArgumentException();
+
+        for (int y = 0; y < quadrantRows; y++)
+            for (int x = 0; x < quadrantColumns; x++)
+                frequencyZ[y * quadrantColumns + x] = geometry.frequencyZ(wavelength, x, y);
+    }
+
+    static int quadrantLength(PropagationGeometry geometry) {
+        return (geometry.resolutionY() / 2 + 1) * (geometry.resolutionX() / 2 + 1);
+    }
+
+    /**
+     * cos and sin of k_z L over a quadrant table
+     */
+    static void quadrantAngles(double[] quadrantFrequencyZ, double distance, double[] cosines, double[] sines) {
+        for (int i = 0; i < quadrantFrequencyZ.length; i++) {
+            final double angle = quadrantFrequencyZ[i] * distance;
+            cosines[i] = Math.cos(angle);
+            sines[i] = Math.sin(angle);
+        }
+    }
+
+    static int[] quadrantRowOffsets(int rows, int columns) {
+        final int quadrantColumns = columns / 2 + 1;
+        final int[] offsets = new int[rows];
+        for (int y = 0; y < rows; y++)
+            offsets[y] = Math.abs(centeredFrequency(y, rows)) * quadrantColumns;
+        return offsets;
+    }
+
+    static int[] quadrantColumnIndices(int columns) {
+        final int[] indices = new int[columns];
+        for (int x = 0; x < columns; x++)
+            indices[x] = Math.abs(centeredFrequency(x, columns));
+        return indices;
+    }
+
+    /**
+     * Frequency index, in [-length / 2, length - length / 2), of unshifted bin index
+     */
+    static int centeredFrequency(int index, int length) {
+        return (index + length / 2) % length - length / 2;
+    }
+
+    public long bytes() {
+        return 2L * Double.BYTES * cosines.length;
+    }
+}
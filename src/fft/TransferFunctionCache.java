@@ -0,0 +1,126 @@
+package fft;
+
+import metrics.Counter;
+import metrics.Metrics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of {@link TransferFunction}s, bounded by the bytes
+ * their tables take.
+ * <p>
+ * Tables are computed outside the lock, so threads missing on different keys do
+ * not wait on each other; two threads missing on the same key may both compute
+ * it. A table larger than the whole budget is returned but not kept.
+ * <p>
+ * Note that cycling through more distinct keys than fit (e.g. a wavelength sweep
+ * larger than the budget, repeated in the same order) evicts every entry before
+ * it is reused; size the budget from {@link #hits()} and {@link #misses()}.
+ */
+public final class TransferFunctionCache {
+    private static final TransferFunctionCache SHARED =
+            new TransferFunctionCache(Runtime.getRuntime().maxMemory() / 8);
+
+    private value record Key(
+            double wavelength,
+            double distance,
+            double extentX,
+            double extentY,
+            int resolutionX,
+            int resolutionY
+    ) {
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, TransferFunction> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public TransferFunctionCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache used when none is given, limited to an eighth of the maximum heap
+     */
+    public static TransferFunctionCache shared() {
+        return SHARED;
+    }
+
+    public TransferFunction get(PropagationGeometry geometry, double wavelength, double distance) {
+        final Key key = new Key(
+                wavelength,
+                distance,
+                geometry.extentX(),
+                geometry.extentY(),
+                geometry.resolutionX(),
+                geometry.resolutionY()
+        );
+
+        synchronized (this) {
+            final TransferFunction cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                Metrics.count(Counter.TRANSFER_FUNCTION_HITS);
+                return cached;
+            }
+            misses++;
+        }
+        Metrics.count(Counter.TRANSFER_FUNCTION_MISSES);
+
+        final TransferFunction computed = TransferFunction.compute(geometry, wavelength, distance);
+        if (computed.bytes() > maxBytes) return computed;
+
+        synchronized (this) {
+            final TransferFunction raced = entries.get(key);
+            if (raced != null) return raced;
+
+            entries.put(key, computed);
+            bytes += computed.bytes();
+
+            final Iterator<Map.Entry<Key, TransferFunction>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                final TransferFunction evicted = eldest.next().getValue();
+                eldest.remove();
+                bytes -= evicted.bytes();
+                evictions++;
+            }
+        }
+
+        return computed;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+}
@@ -0,0 +1,286 @@
+package fft;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ComplexKernels} on {@link DoubleVector} lanes. Each method handles a
+ * whole number of vectors from the start of its range and returns where it
+ * stopped; the caller finishes the rest.
+ * <p>
+ * Only loaded when jdk.incubator.vector is in the boot layer, see
+ * {@link ComplexKernels#VECTORIZED}.
+ */
+final class VectorKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    static int floatLanes() {
+        return FLOAT_SPECIES.length();
+    }
+
+    static int negate(double[] values, int from, int to) {
+        final int bound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, values, i).neg().intoArray(values, i);
+        return i;
+    }
+
+    static int scaleConjugate(double[] real, double[] imaginary, int from, int to, double factor) {
+        final int bound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, real, i).mul(factor).intoArray(real, i);
+            DoubleVector.fromArray(SPECIES, imaginary, i).mul(factor).neg().intoArray(imaginary, i);
+        }
+        return i;
+    }
+
+    static int multiply(
+            double[] real, double[] imaginary,
+            double[] factorReal, double[] factorImaginary,
+            int from, int to
+    ) {
+        final int bound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector valueReal = DoubleVector.fromArray(SPECIES, real, i);
+            final DoubleVector valueImaginary = DoubleVector.fromArray(SPECIES, imaginary, i);
+            final DoubleVector multiplierReal = DoubleVector.fromArray(SPECIES, factorReal, i);
+            final DoubleVector multiplierImaginary = DoubleVector.fromArray(SPECIES, factorImaginary, i);
+            valueReal.mul(multiplierReal).sub(valueImaginary.mul(multiplierImaginary)).intoArray(real, i);
+            valueReal.mul(multiplierImaginary).add(valueImaginary.mul(multiplierReal)).intoArray(imaginary, i);
+        }
+        return i;
+    }
+
+    static int multiplyCosSin(
+            double[] sourceReal, double[] sourceImaginary, int sourceOffset,
+            double[] cosines, double[] sines, int factorOffset, double scale,
+            double[] cosineReal, double[] cosineImaginary,
+            double[] sineReal, double[] sineImaginary, int targetOffset,
+            int count
+    ) {
+        final int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector cosine = DoubleVector.fromArray(SPECIES, cosines, factorOffset + i).mul(scale);
+            final DoubleVector sine = DoubleVector.fromArray(SPECIES, sines, factorOffset + i).mul(scale);
+            final DoubleVector valueReal = DoubleVector.fromArray(SPECIES, sourceReal, sourceOffset + i);
+            final DoubleVector valueImaginary = DoubleVector.fromArray(SPECIES, sourceImaginary, sourceOffset + i);
+            valueReal.mul(cosine).intoArray(cosineReal, targetOffset + i);
+            valueImaginary.mul(cosine).intoArray(cosineImaginary, targetOffset + i);
+            valueReal.mul(sine).intoArray(sineReal, targetOffset + i);
+            valueImaginary.mul(sine).intoArray(sineImaginary, targetOffset + i);
+        }
+        return i;
+    }
+
+    static int butterflies(
+            double[] real, double[] imaginary,
+            int evenOffset, int oddOffset,
+            double[] cosines, double[] sines, int twiddleOffset,
+            int count, double sign
+    ) {
+        final int bound = SPECIES.loopBound(count);
+        int j = 0;
+        for (; j < bound; j += SPECIES.length()) {
+            final DoubleVector factorReal = DoubleVector.fromArray(SPECIES, cosines, twiddleOffset + j);
+            final DoubleVector factorImaginary = DoubleVector.fromArray(SPECIES, sines, twiddleOffset + j).mul(sign);
+
+            final DoubleVector evenReal = DoubleVector.fromArray(SPECIES, real, evenOffset + j);
+            final DoubleVector evenImaginary = DoubleVector.fromArray(SPECIES, imaginary, evenOffset + j);
+            final DoubleVector oddReal = DoubleVector.fromArray(SPECIES, real, oddOffset + j);
+            final DoubleVector oddImaginary = DoubleVector.fromArray(SPECIES, imaginary, oddOffset + j);
+
+            evenReal.add(oddReal).intoArray(real, evenOffset + j);
+            evenImaginary.add(oddImaginary).intoArray(imaginary, evenOffset + j);
+
+            final DoubleVector differenceReal = evenReal.sub(oddReal);
+            final DoubleVector differenceImaginary = evenImaginary.sub(oddImaginary);
+            differenceReal.mul(factorReal).sub(differenceImaginary.mul(factorImaginary))
+                    .intoArray(real, oddOffset + j);
+            differenceReal.mul(factorImaginary).add(differenceImaginary.mul(factorReal))
+                    .intoArray(imaginary, oddOffset + j);
+        }
+        return j;
+    }
+
+    static int butterflies4(
+            double[] real, double[] imaginary,
+            int offset, int quarter,
+            double[] cosines, double[] sines, int twiddleOffset, int twiddleBlock,
+            int count, double sign
+    ) {
+        final int bound = SPECIES.loopBound(count);
+        int j = 0;
+        for (; j < bound; j += SPECIES.length()) {
+            final int index = offset + j;
+            final int index1 = index + quarter;
+            final int index2 = index1 + quarter;
+            final int index3 = index2 + quarter;
+            final DoubleVector real0 = DoubleVector.fromArray(SPECIES, real, index);
+            final DoubleVector imaginary0 = DoubleVector.fromArray(SPECIES, imaginary, index);
+            final DoubleVector real1 = DoubleVector.fromArray(SPECIES, real, index1);
+            final DoubleVector imaginary1 = DoubleVector.fromArray(SPECIES, imaginary, index1);
+            final DoubleVector real2 = DoubleVector.fromArray(SPECIES, real, index2);
+            final DoubleVector imaginary2 = DoubleVector.fromArray(SPECIES, imaginary, index2);
+            final DoubleVector real3 = DoubleVector.fromArray(SPECIES, real, index3);
+            final DoubleVector imaginary3 = DoubleVector.fromArray(SPECIES, imaginary, index3);
+
+            final DoubleVector sumReal = real0.add(real2);
+            final DoubleVector sumImaginary = imaginary0.add(imaginary2);
+            final DoubleVector differenceReal = real0.sub(real2);
+            final DoubleVector differenceImaginary = imaginary0.sub(imaginary2);
+            final DoubleVector oddSumReal = real1.add(real3);
+            final DoubleVector oddSumImaginary = imaginary1.add(imaginary3);
+            final DoubleVector rotatedReal = imaginary1.sub(imaginary3).mul(-sign);
+            final DoubleVector rotatedImaginary = real1.sub(real3).mul(sign);
+
+            sumReal.add(oddSumReal).intoArray(real, index);
+            sumImaginary.add(oddSumImaginary).intoArray(imaginary, index);
+
+            final int twiddle = twiddleOffset + j;
+            rotate(
+                    sumReal.sub(oddSumReal), sumImaginary.sub(oddSumImaginary),
+                    cosines, sines, twiddle + twiddleBlock, sign,
+                    real, imaginary, index1
+            );
+            rotate(
+                    differenceReal.add(rotatedReal), differenceImaginary.add(rotatedImaginary),
+                    cosines, sines, twiddle, sign,
+                    real, imaginary, index2
+            );
+            rotate(
+                    differenceReal.sub(rotatedReal), differenceImaginary.sub(rotatedImaginary),
+                    cosines, sines, twiddle + 2 * twiddleBlock, sign,
+                    real, imaginary, index3
+            );
+        }
+        return j;
+    }
+
+    /**
+     * Stores value times cosines[twiddle] + i sign sines[twiddle] at index
+     */
+    private static void rotate(
+            DoubleVector valueReal, DoubleVector valueImaginary,
+            double[] cosines, double[] sines, int twiddle, double sign,
+            double[] real, double[] imaginary, int index
+    ) {
+        final DoubleVector factorReal = DoubleVector.fromArray(SPECIES, cosines, twiddle);
+        final DoubleVector factorImaginary = DoubleVector.fromArray(SPECIES, sines, twiddle).mul(sign);
+        valueReal.mul(factorReal).sub(valueImaginary.mul(factorImaginary)).intoArray(real, index);
+        valueReal.mul(factorImaginary).add(valueImaginary.mul(factorReal)).intoArray(imaginary, index);
+    }
+
+    static int negate(float[] values, int from, int to) {
+        final int bound = from + FLOAT_SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += FLOAT_SPECIES.length())
+            FloatVector.fromArray(FLOAT_SPECIES, values, i).neg().intoArray(values, i);
+        return i;
+    }
+
+    static int scaleConjugate(float[] real, float[] imaginary, int from, int to, float factor) {
+        final int bound = from + FLOAT_SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, real, i).mul(factor).intoArray(real, i);
+            FloatVector.fromArray(FLOAT_SPECIES, imaginary, i).mul(factor).neg().intoArray(imaginary, i);
+        }
+        return i;
+    }
+
+    static int multiply(
+            float[] real, float[] imaginary,
+            float[] factorReal, float[] factorImaginary,
+            int from, int to
+    ) {
+        final int bound = from + FLOAT_SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            final FloatVector valueReal = FloatVector.fromArray(FLOAT_SPECIES, real, i);
+            final FloatVector valueImaginary = FloatVector.fromArray(FLOAT_SPECIES, imaginary, i);
+            final FloatVector multiplierReal = FloatVector.fromArray(FLOAT_SPECIES, factorReal, i);
+            final FloatVector multiplierImaginary = FloatVector.fromArray(FLOAT_SPECIES, factorImaginary, i);
+            valueReal.mul(multiplierReal).sub(valueImaginary.mul(multiplierImaginary)).intoArray(real, i);
+            valueReal.mul(multiplierImaginary).add(valueImaginary.mul(multiplierReal)).intoArray(imaginary, i);
+        }
+        return i;
+    }
+
+    static int butterflies4(
+            float[] real, float[] imaginary,
+            int offset, int quarter,
+            float[] cosines, float[] sines, int twiddleOffset, int twiddleBlock,
+            int count, float sign
+    ) {
+        final int bound = FLOAT_SPECIES.loopBound(count);
+        int j = 0;
+        for (; j < bound; j += FLOAT_SPECIES.length()) {
+            final int index = offset + j;
+            final int index1 = index + quarter;
+            final int index2 = index1 + quarter;
+            final int index3 = index2 + quarter;
+            final FloatVector real0 = FloatVector.fromArray(FLOAT_SPECIES, real, index);
+            final FloatVector imaginary0 = FloatVector.fromArray(FLOAT_SPECIES, imaginary, index);
+            final FloatVector real1 = FloatVector.fromArray(FLOAT_SPECIES, real, index1);
+            final FloatVector imaginary1 = FloatVector.fromArray(FLOAT_SPECIES, imaginary, index1);
+            final FloatVector real2 = FloatVector.fromArray(FLOAT_SPECIES, real, index2);
+            final FloatVector imaginary2 = FloatVector.fromArray(FLOAT_SPECIES, imaginary, index2);
+            final FloatVector real3 = FloatVector.fromArray(FLOAT_SPECIES, real, index3);
+            final FloatVector imaginary3 = FloatVector.fromArray(FLOAT_SPECIES, imaginary, index3);
+
+            final FloatVector sumReal = real0.add(real2);
+            final FloatVector sumImaginary = imaginary0.add(imaginary2);
+            final FloatVector differenceReal = real0.sub(real2);
+            final FloatVector differenceImaginary = imaginary0.sub(imaginary2);
+            final FloatVector oddSumReal = real1.add(real3);
+            final FloatVector oddSumImaginary = imaginary1.add(imaginary3);
+            final FloatVector rotatedReal = imaginary1.sub(imaginary3).mul(-sign);
+            final FloatVector rotatedImaginary = real1.sub(real3).mul(sign);
+
+            sumReal.add(oddSumReal).intoArray(real, index);
+            sumImaginary.add(oddSumImaginary).intoArray(imaginary, index);
+
+            /*
+            the three rotations are written out rather than shared through a helper:
+            C2 gives up inlining a helper this deep once the caller is large, and
+            every vector crossing the call is then boxed
+             */
+            final int twiddle = twiddleOffset + j;
+            final FloatVector lowReal = sumReal.sub(oddSumReal);
+            final FloatVector lowImaginary = sumImaginary.sub(oddSumImaginary);
+            final FloatVector cosine2 = FloatVector.fromArray(FLOAT_SPECIES, cosines, twiddle + twiddleBlock);
+            final FloatVector sine2 = FloatVector.fromArray(FLOAT_SPECIES, sines, twiddle + twiddleBlock).mul(sign);
+            lowReal.mul(cosine2).sub(lowImaginary.mul(sine2)).intoArray(real, index1);
+            lowReal.mul(sine2).add(lowImaginary.mul(cosine2)).intoArray(imaginary, index1);
+
+            final FloatVector plusReal = differenceReal.add(rotatedReal);
+            final FloatVector plusImaginary = differenceImaginary.add(rotatedImaginary);
+            final FloatVector cosine1 = FloatVector.fromArray(FLOAT_SPECIES, cosines, twiddle);
+            final FloatVector sine1 = FloatVector.fromArray(FLOAT_SPECIES, sines, twiddle).mul(sign);
+            plusReal.mul(cosine1).sub(plusImaginary.mul(sine1)).intoArray(real, index2);
+            plusReal.mul(sine1).add(plusImaginary.mul(cosine1)).intoArray(imaginary, index2);
+
+            final FloatVector minusReal = differenceReal.sub(rotatedReal);
+            final FloatVector minusImaginary = differenceImaginary.sub(rotatedImaginary);
+            final FloatVector cosine3 = FloatVector.fromArray(FLOAT_SPECIES, cosines, twiddle + 2 * twiddleBlock);
+            final FloatVector sine3 = FloatVector.fromArray(FLOAT_SPECIES, sines, twiddle + 2 * twiddleBlock).mul(sign);
+            minusReal.mul(cosine3).sub(minusImaginary.mul(sine3)).intoArray(real, index3);
+            minusReal.mul(sine3).add(minusImaginary.mul(cosine3)).intoArray(imaginary, index3);
+        }
+        return j;
+    }
+
+}
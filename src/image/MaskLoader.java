@@ -0,0 +1,170 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Turns mask images into amplitude masks.
+ * <p>
+ * Gray and RGB images of any integer bit depth are read off their raster a row
+ * of samples at a time, without going through the colour model for every pixel.
+ * Anything else (palette images, premultiplied alpha, floating-point samples) is
+ * read a row at a time as 8-bit ARGB. So is every image but 8-bit sRGB ones in
+ * {@link Mode#THRESHOLD}, whose threshold is defined on the converted ARGB.
+ */
+public final class MaskLoader {
+    /**
+     * How a pixel becomes an amplitude
+     */
+    public enum Mode {
+        /**
+         * 1 where the pixel is not fully transparent and every colour component is
+         * at least 250 once converted to 8-bit sRGB ARGB, 0 elsewhere
+         */
+        THRESHOLD,
+        /**
+         * gray level, or Rec. 709 luma of the stored components for colour images,
+         * times alpha, each scaled to [0, 1] by its bit depth
+         */
+        AMPLITUDE
+    }
+
+    private static final int WHITE_THRESHOLD = 250;
+
+    private MaskLoader() {
+    }
+
+    /**
+     * @return row-major width x height amplitudes
+     */
+    public static double[] read(File file, int width, int height, Mode mode) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) throw new IOException("No image reader for " + file);
+        if (image.getWidth() != width || image.getHeight() != height)
+            throw new IllegalStateException("Mask is " + image.getWidth() + "x" + image.getHeight()
+                    + ", expected " + width + "x" + height);
+
+        return toMask(image, mode);
+    }
+
+    /**
+     * @return row-major amplitudes of image
+     */
+    public static double[] toMask(BufferedImage image, Mode mode) {
+        final double[] mask = new double[image.getWidth() * image.getHeight()];
+        final ColorModel colorModel = image.getColorModel();
+        final Raster raster = image.getRaster();
+        if (readsRaster(colorModel, raster) && (mode != Mode.THRESHOLD || samplesAreARGB(colorModel, raster)))
+            fromRaster(image, mode, mask);
+        else fromARGB(image, mode, mask);
+        return mask;
+    }
+
+    /**
+     * Whether the raster holds unpremultiplied gray or RGB samples of up to 16
+     * bits, alpha last if any
+     */
+    private static boolean readsRaster(ColorModel colorModel, Raster raster) {
+        if (!(colorModel instanceof ComponentColorModel) && !(colorModel instanceof DirectColorModel)) return false;
+        if (colorModel.isAlphaPremultiplied()) return false;
+
+        final int transferType = raster.getTransferType();
+        if (transferType == DataBuffer.TYPE_FLOAT || transferType == DataBuffer.TYPE_DOUBLE) return false;
+
+        for (int sampleSize : raster.getSampleModel().getSampleSize())
+            if (sampleSize > 16) return false;
+
+        final int components = colorModel.getNumColorComponents();
+        return components == 1 || components == 3;
+    }
+
+    /**
+     * Whether the 8-bit ARGB of a pixel is its raw samples: 8-bit sRGB. Gray
+     * levels and other depths are converted on the way to ARGB, which moves a
+     * few of them across the threshold.
+     */
+    private static boolean samplesAreARGB(ColorModel colorModel, Raster raster) {
+        if (!colorModel.getColorSpace().isCS_sRGB()) return false;
+
+        for (int sampleSize : raster.getSampleModel().getSampleSize())
+            if (sampleSize != 8) return false;
+        return true;
+    }
+
+    private static void fromRaster(BufferedImage image, Mode mode, double[] mask) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Raster raster = image.getRaster();
+        final ColorModel colorModel = image.getColorModel();
+        final int bands = raster.getNumBands();
+        final boolean gray = colorModel.getNumColorComponents() == 1;
+        final int alphaBand = colorModel.hasAlpha() ? bands - 1 : -1;
+
+        final long[] fullScale = new long[bands];
+        for (int band = 0; band < bands; band++)
+            fullScale[band] = (1L << raster.getSampleModel().getSampleSize(band)) - 1;
+
+        final int[] row = new int[width * bands];
+        for (int y = 0; y < height; y++) {
+            raster.getPixels(raster.getMinX(), raster.getMinY() + y, width, 1, row);
+
+            for (int x = 0; x < width; x++) {
+                final int base = x * bands;
+                final int alpha = alphaBand < 0 ? 1 : row[base + alphaBand];
+
+                if (mode == Mode.THRESHOLD) {
+                    boolean white = alpha > 0;
+                    for (int band = 0; band < (gray ? 1 : 3); band++)
+                        white &= (long) row[base + band] * 255 >= WHITE_THRESHOLD * fullScale[band];
+                    if (white) mask[y * width + x] = 1.0;
+                    continue;
+                }
+
+                final double level = gray
+                        ? row[base] / (double) fullScale[0]
+                        : 0.2126 * row[base] / fullScale[0]
+                        + 0.7152 * row[base + 1] / fullScale[1]
+                        + 0.0722 * row[base + 2] / fullScale[2];
+                final double opacity = alphaBand < 0 ? 1.0 : alpha / (double) fullScale[alphaBand];
+                mask[y * width + x] = level * opacity;
+            }
+        }
+    }
+
+    private static void fromARGB(BufferedImage image, Mode mode, double[] mask) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int x = 0; x < width; x++) {
+                final int argb = row[x];
+                final int alpha = (argb >>> 24) & 0xFF;
+                final int red = (argb >>> 16) & 0xFF;
+                final int green = (argb >>> 8) & 0xFF;
+                final int blue = argb & 0xFF;
+
+                if (mode == Mode.THRESHOLD) {
+                    final boolean isWhite = alpha > 0 &&
+                            red >= WHITE_THRESHOLD &&
+                            green >= WHITE_THRESHOLD &&
+                            blue >= WHITE_THRESHOLD;
+                    if (isWhite) mask[y * width + x] = 1.0;
+                    continue;
+                }
+
+                final double level = (0.2126 * red + 0.7152 * green + 0.0722 * blue) / 255.0;
+                mask[y * width + x] = level * alpha / 255.0;
+            }
+        }
+    }
+}
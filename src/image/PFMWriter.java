@@ -0,0 +1,54 @@
+package image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes Portable Float Maps: a short text header, then raw little-endian
+ * float32 samples, bottom row first. There is no compression or quantization,
+ * so writing is a straight copy and the full range of the data is kept.
+ */
+public final class PFMWriter {
+    private PFMWriter() {
+    }
+
+    /**
+     * @param samples  row-major width x height pixels of channels interleaved samples
+     * @param channels 1 for gray ("Pf"), 3 for RGB ("PF")
+     */
+    public static void write(Path path, float[] samples, int width, int height, int channels) throws IOException {
+        if (channels != 1 && channels != 3) throw new IllegalArgumentException("PFM holds 1 or 3 channels");
+        if (width <= 0 || height <= 0 || samples.length != width * height * channels)
+            throw new IllegalArgumentException();
+
+        // a negative scale marks little-endian samples
+        final String header = (channels == 3 ? "PF" : "Pf") + "\n" + width + " " + height + "\n-1.0\n";
+        final int rowSamples = width * channels;
+
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+
+            final ByteBuffer row = ByteBuffer.allocateDirect(rowSamples * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int y = height - 1; y >= 0; y--) {
+                row.clear();
+                row.asFloatBuffer().put(samples, y * rowSamples, rowSamples);
+                writeFully(channel, row);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,29 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one colour pass over a grid
+ */
+@Name("zrachok.Color")
+@Label("Colour Pass")
+@Category({"Zrachok", "Colour"})
+@Description("Spectra folded into XYZ, or XYZ converted to sRGB")
+@StackTrace(false)
+public final class ColorEvent extends Event {
+    @Label("Points")
+    final int points;
+    @Label("Wavelengths")
+    @Description("Wavelengths folded in by this pass, 0 for a conversion of XYZ")
+    final int wavelengths;
+
+    public ColorEvent(int points, int wavelengths) {
+        this.points = points;
+        this.wavelengths = wavelengths;
+    }
+}
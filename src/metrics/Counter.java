@@ -0,0 +1,17 @@
+package metrics;
+
+/**
+ * Events {@link Metrics} counts without timing them
+ */
+public enum Counter {
+    /**
+     * monochromatic fields propagated
+     */
+    PROPAGATIONS,
+    TRANSFER_FUNCTION_HITS,
+    TRANSFER_FUNCTION_MISSES,
+    /**
+     * wavelengths folded into colours
+     */
+    FRAMES
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one 2D transform
+ */
+@Name("zrachok.FFT")
+@Label("2D FFT")
+@Category({"Zrachok", "FFT"})
+@Description("One 2D transform of a grid")
+@StackTrace(false)
+public final class FFTEvent extends Event {
+    @Label("Rows")
+    final int rows;
+    @Label("Columns")
+    final int columns;
+    @Label("Inverse")
+    final boolean inverse;
+    @Label("Half Spectrum")
+    @Description("Real field with a half spectrum, as in r2c2D and c2r2D")
+    final boolean halfSpectrum;
+
+    public FFTEvent(int rows, int columns, boolean inverse, boolean halfSpectrum) {
+        this.rows = rows;
+        this.columns = columns;
+        this.inverse = inverse;
+        this.halfSpectrum = halfSpectrum;
+    }
+}
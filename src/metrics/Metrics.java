@@ -0,0 +1,130 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timers per {@link Stage} and {@link Counter}s, switched on with
+ * -Dmetrics=true.
+ * <p>
+ * The switch is read once into a constant, so with it off {@link #start},
+ * {@link #stop} and {@link #count} do nothing and compile down to nothing.
+ * <p>
+ * Stages are timed on the thread that calls them and add up across threads, so
+ * with several wavelengths in flight the totals exceed the wall time. Allocated
+ * bytes are likewise those of the calling thread; what a stage allocates on
+ * fork/join workers it splits work onto is not included.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("metrics");
+
+    private static final com.sun.management.ThreadMXBean THREADS = ENABLED ? allocationCounter() : null;
+    private static final LongAdder[] CALLS = adders(Stage.values().length);
+    private static final LongAdder[] NANOS = adders(Stage.values().length);
+    private static final LongAdder[] BYTES = adders(Stage.values().length);
+    private static final LongAdder[] COUNTS = adders(Counter.values().length);
+
+    /**
+     * A running stage, from {@link #start}
+     */
+    public value record Span(Stage stage, long startNanos, long startBytes) {
+    }
+
+    private Metrics() {
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)) return null;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return null;
+        return threads;
+    }
+
+    private static LongAdder[] adders(int count) {
+        final LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0L : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return the span to hand to {@link #stop}, null when metrics are off
+     */
+    public static Span start(Stage stage) {
+        if (!ENABLED) return null;
+        return new Span(stage, System.nanoTime(), allocatedBytes());
+    }
+
+    public static void stop(Span span) {
+        if (!ENABLED) return;
+
+        final long nanos = System.nanoTime() - span.startNanos();
+        final long bytes = allocatedBytes() - span.startBytes();
+        final int stage = span.stage().ordinal();
+        CALLS[stage].increment();
+        NANOS[stage].add(nanos);
+        BYTES[stage].add(bytes);
+    }
+
+    public static void count(Counter counter) {
+        count(counter, 1);
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (!ENABLED) return;
+        COUNTS[counter.ordinal()].add(amount);
+    }
+
+    public static long calls(Stage stage) {
+        return CALLS[stage.ordinal()].sum();
+    }
+
+    public static long nanos(Stage stage) {
+        return NANOS[stage.ordinal()].sum();
+    }
+
+    public static long allocatedBytes(Stage stage) {
+        return BYTES[stage.ordinal()].sum();
+    }
+
+    public static long total(Counter counter) {
+        return COUNTS[counter.ordinal()].sum();
+    }
+
+    public static void reset() {
+        for (LongAdder[] adders : new LongAdder[][]{CALLS, NANOS, BYTES, COUNTS})
+            for (LongAdder adder : adders)
+                adder.reset();
+    }
+
+    /**
+     * Everything recorded so far as a JSON object:
+     * <pre>
+     * {"stages": {"FORWARD_FFT": {"calls": ..., "nanos": ..., "allocatedBytes": ...}, ...},
+     *  "counters": {"PROPAGATIONS": ..., ...}}
+     * </pre>
+     * Every stage and counter is listed, including those that stayed at zero.
+     */
+    public static String summary() {
+        final StringBuilder json = new StringBuilder("{\n  \"stages\": {");
+        final Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            final Stage stage = stages[i];
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    \"").append(stage.name()).append("\": {")
+                    .append("\"calls\": ").append(calls(stage))
+                    .append(", \"nanos\": ").append(nanos(stage))
+                    .append(", \"allocatedBytes\": ").append(allocatedBytes(stage))
+                    .append('}');
+        }
+        json.append("\n  },\n  \"counters\": {");
+        final Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++)
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    \"").append(counters[i].name()).append("\": ").append(total(counters[i]));
+        return json.append("\n  }\n}\n").toString();
+    }
+}
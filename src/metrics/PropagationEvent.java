@@ -0,0 +1,34 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event spanning one monochromatic propagation
+ */
+@Name("zrachok.Propagation")
+@Label("Propagation")
+@Category({"Zrachok", "Propagation"})
+@Description("One wavelength propagated to one distance")
+@StackTrace(false)
+public final class PropagationEvent extends Event {
+    @Label("Wavelength")
+    final double wavelength;
+    @Label("Distance")
+    final double distance;
+    @Label("Resolution X")
+    final int resolutionX;
+    @Label("Resolution Y")
+    final int resolutionY;
+
+    public PropagationEvent(double wavelength, double distance, int resolutionX, int resolutionY) {
+        this.wavelength = wavelength;
+        this.distance = distance;
+        this.resolutionX = resolutionX;
+        this.resolutionY = resolutionY;
+    }
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+/**
+ * Steps of a simulation run that {@link Metrics} times separately
+ */
+public enum Stage {
+    /**
+     * reading the mask image and turning it into amplitudes
+     */
+    MASK_DECODE,
+    /**
+     * forward 2D transforms, full or half spectrum
+     */
+    FORWARD_FFT,
+    /**
+     * evaluating e^(i k_z L) tables, i.e. transfer function cache misses
+     */
+    TRANSFER_FUNCTION,
+    /**
+     * inverse 2D transforms, full or half spectrum
+     */
+    INVERSE_FFT,
+    /**
+     * |U| of observed fields
+     */
+    MODULUS,
+    /**
+     * folding spectra into XYZ and converting to sRGB
+     */
+    COLOR,
+    /**
+     * writing result images, PNG or PFM
+     */
+    PNG_ENCODE
+}
@@ -0,0 +1,360 @@
+package simulation;
+
+import color.CIE;
+import color.PolychromaticLight;
+import fft.AngularSpectrumPropagator;
+import fft.ComplexBuffer;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.lang.Math;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
+
+/**
+ * Colours of a polychromatic sweep from a subset of its wavelengths.
+ * <p>
+ * A full sweep sums, over every line of the light, |U| at that wavelength
+ * times the line's weight (source intensity times colour matching functions).
+ * |U| is linear in the source intensity and changes slowly with wavelength, so
+ * here it is propagated at unit intensity on a few lines only and taken to be
+ * linear in wavelength in between. The sum then becomes a quadrature: each
+ * sampled line gets the weights of all the lines its hat function covers, and
+ * the result is exactly the full sweep over the interpolated |U|.
+ * <p>
+ * Lines are first picked at even quantiles of the summed weights, so most
+ * samples go where the colour matching functions and the source are strong.
+ * Each interval between samples is then split at its middle line. If adding
+ * that sample moves the colour of some pixel by more than the tolerance (in
+ * {@link CIE#deltaE}), both halves are split again; otherwise the interval is
+ * done. Intervals of adjacent lines are exact.
+ * <p>
+ * The last split of every finished interval was judged by how much it changed
+ * the colours, which bounds what the coarser sampling got wrong; that change,
+ * summed over all finished intervals, is reported as the error estimate. Error
+ * left after the last split is usually well below it.
+ * <p>
+ * Every sampled |U| is kept until the end, one plane per sample.
+ */
+public final class AdaptiveSpectralSampler {
+    /**
+     * @param colors       the sweep's colours
+     * @param samples      number of wavelengths propagated
+     * @param maxDeltaE    estimated colour error, largest over the pixels
+     * @param meanDeltaE   estimated colour error, averaged over the pixels
+     */
+    public value record Result(XYZAccumulator colors, int samples, double maxDeltaE, double meanDeltaE) {
+    }
+
+    private final AngularSpectrumPropagator propagator;
+    private final double distance;
+    private final Executor executor;
+    private final CIE cie;
+    private final double reflectance;
+
+    /**
+     * @param propagator  propagator for the mask being lit
+     * @param distance    observation distance from incident
+     * @param executor    runs the propagations
+     * @param cie         colour matching functions
+     * @param reflectance as for {@link XYZAccumulator}
+     */
+    public AdaptiveSpectralSampler(
+            AngularSpectrumPropagator propagator,
+            double distance,
+            Executor executor,
+            CIE cie,
+            double reflectance
+    ) {
+        this.propagator = propagator;
+        this.distance = distance;
+        this.executor = executor;
+        this.cie = cie;
+        this.reflectance = reflectance;
+    }
+
+    /**
+     * @param light          lines of the source, in increasing wavelength
+     * @param initialSamples lines sampled before refining, at least 2
+     * @param tolerance      largest colour change, in CIE76 delta E, for which an
+     *                       interval is left unsplit
+     * @param progress       told the number of samples so far after each round,
+     *                       out of the number of lines
+     */
+    public Result run(
+            List<PolychromaticLight.WavelengthWithIntensity> light,
+            int initialSamples,
+            double tolerance,
+            PolychromaticSimulation.ProgressListener progress
+    ) {
+        final int lines = light.size();
+        if (lines < 2) throw new IllegalArgumentException("Need at least two wavelengths");
+        if (initialSamples < 2) throw new IllegalArgumentException("Need at least two initial samples");
+        if (!(tolerance > 0.0)) throw new IllegalArgumentException("Tolerance must be positive");
+
+        final double[] wavelengths = new double[lines];
+        final double[][] weights = new double[3][lines];
+        for (int i = 0; i < lines; i++) {
+            final PolychromaticLight.WavelengthWithIntensity line = light.get(i);
+            final CIE.XYZColor stimulus = cie.tristimulus(line.wavelength());
+            final double factor = reflectance / Math.PI * line.intensity();
+            wavelengths[i] = line.wavelength();
+            weights[0][i] = factor * stimulus.x();
+            weights[1][i] = factor * stimulus.y();
+            weights[2][i] = factor * stimulus.z();
+        }
+
+        final int numPoints = propagator.geometry.numPoints();
+        final TreeMap<Integer, double[]> samples = new TreeMap<>();
+        propagate(light, importanceSamples(weights, initialSamples), samples);
+
+        final double[][] difference = new double[3][numPoints];
+        List<Integer> intervals = new ArrayList<>();
+        Integer previous = null;
+        for (int line : samples.keySet()) {
+            if (previous != null && line - previous >= 2) intervals.add(previous);
+            previous = line;
+        }
+
+        XYZAccumulator estimate = integrate(wavelengths, weights, samples, numPoints);
+        while (!intervals.isEmpty()) {
+            final List<Integer> middles = new ArrayList<>();
+            for (int start : intervals)
+                middles.add((start + samples.higherKey(start)) >>> 1);
+            propagate(light, middles, samples);
+            progress.progress(samples.size(), lines);
+
+            estimate = integrate(wavelengths, weights, samples, numPoints);
+            final XYZAccumulator refined = estimate;
+            final List<Integer> current = intervals;
+            final double[][][] coefficients = new double[current.size()][][];
+            final boolean[] split = new boolean[current.size()];
+            IntStream.range(0, current.size()).parallel().forEach(interval -> {
+                final int start = current.get(interval);
+                final int middle = samples.higherKey(start);
+                final int end = samples.higherKey(middle);
+                coefficients[interval] = refinementCoefficients(wavelengths, weights, start, middle, end);
+                split[interval] = maxDeltaE(
+                        refined, coefficients[interval],
+                        samples.get(start), samples.get(middle), samples.get(end)
+                ) > tolerance;
+            });
+
+            final List<Integer> next = new ArrayList<>();
+            for (int interval = 0; interval < current.size(); interval++) {
+                final int start = current.get(interval);
+                final int middle = samples.higherKey(start);
+                final int end = samples.higherKey(middle);
+                if (split[interval]) {
+                    if (middle - start >= 2) next.add(start);
+                    if (end - middle >= 2) next.add(middle);
+                    continue;
+                }
+
+                addDifference(
+                        difference, coefficients[interval],
+                        samples.get(start), samples.get(middle), samples.get(end)
+                );
+            }
+            intervals = next;
+        }
+
+        double maxDeltaE = 0.0;
+        double sumDeltaE = 0.0;
+        for (int p = 0; p < numPoints; p++) {
+            final double deltaE = CIE.deltaE(
+                    estimate.x[p], estimate.y[p], estimate.z[p],
+                    estimate.x[p] - difference[0][p],
+                    estimate.y[p] - difference[1][p],
+                    estimate.z[p] - difference[2][p]
+            );
+            maxDeltaE = Math.max(maxDeltaE, deltaE);
+            sumDeltaE += deltaE;
+        }
+
+        return new Result(estimate, samples.size(), maxDeltaE, sumDeltaE / numPoints);
+    }
+
+    /**
+     * count lines at even quantiles of the summed weights, always including the
+     * first and last; fewer if several quantiles fall on the same line
+     */
+    private static List<Integer> importanceSamples(double[][] weights, int count) {
+        final int lines = weights[0].length;
+        final double[] cumulative = new double[lines];
+        double total = 0.0;
+        for (int i = 0; i < lines; i++) {
+            total += weights[0][i] + weights[1][i] + weights[2][i];
+            cumulative[i] = total;
+        }
+
+        final TreeSet<Integer> picked = new TreeSet<>(List.of(0, lines - 1));
+        for (int k = 1; k < count - 1; k++) {
+            if (total <= 0.0) {
+                picked.add((int) ((long) k * (lines - 1) / (count - 1)));
+                continue;
+            }
+
+            final double target = total * k / (count - 1);
+            int line = 0;
+            while (cumulative[line] < target) line++;
+            picked.add(line);
+        }
+        return new ArrayList<>(picked);
+    }
+
+    /**
+     * Propagates the given lines at unit intensity into samples
+     */
+    private void propagate(
+            List<PolychromaticLight.WavelengthWithIntensity> light,
+            List<Integer> lines,
+            Map<Integer, double[]> samples
+    ) {
+        final List<CompletableFuture<double[]>> futures = new ArrayList<>();
+        for (int line : lines) {
+            final double wavelength = light.get(line).wavelength();
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final ComplexBuffer observation = propagator.propagate(wavelength, distance, 1.0);
+
+                final Metrics.Span span = Metrics.start(Stage.MODULUS);
+                final double[] intensities = new double[observation.length()];
+                observation.modulus(intensities);
+                Metrics.stop(span);
+                return intensities;
+            }, executor));
+        }
+
+        try {
+            for (int i = 0; i < lines.size(); i++)
+                samples.put(lines.get(i), futures.get(i).join());
+        } catch (CompletionException e) {
+            for (CompletableFuture<double[]> future : futures)
+                future.cancel(false);
+
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Sum over every line of its weights times |U| interpolated linearly between
+     * the samples around it
+     */
+    private XYZAccumulator integrate(
+            double[] wavelengths,
+            double[][] weights,
+            TreeMap<Integer, double[]> samples,
+            int numPoints
+    ) {
+        final List<Integer> lines = new ArrayList<>(samples.keySet());
+        final double[][] sampleWeights = new double[lines.size()][3];
+        for (int k = 0; k + 1 < lines.size(); k++) {
+            final int start = lines.get(k);
+            final int end = lines.get(k + 1);
+            for (int i = start; i < end; i++) {
+                final double t = (wavelengths[i] - wavelengths[start]) / (wavelengths[end] - wavelengths[start]);
+                for (int channel = 0; channel < 3; channel++) {
+                    sampleWeights[k][channel] += (1.0 - t) * weights[channel][i];
+                    sampleWeights[k + 1][channel] += t * weights[channel][i];
+                }
+            }
+        }
+        final int last = lines.size() - 1;
+        for (int channel = 0; channel < 3; channel++)
+            sampleWeights[last][channel] += weights[channel][lines.get(last)];
+
+        final XYZAccumulator colors = new XYZAccumulator(cie, numPoints, reflectance);
+        for (int k = 0; k < lines.size(); k++)
+            colors.add(samples.get(lines.get(k)), sampleWeights[k][0], sampleWeights[k][1], sampleWeights[k][2]);
+        return colors;
+    }
+
+    /*
+    Over the lines strictly inside (start, end), sampling at middle replaces
+    |U| ~ (1 - t) U_start + t U_end by the two-piece interpolation through
+    U_middle. Both are linear in the three samples, so the change in X, Y and Z
+    is, per pixel, c_start U_start + c_middle U_middle + c_end U_end with one set
+    of coefficients per channel.
+     */
+
+    /**
+     * @return coefficients[channel][0, 1, 2] for the start, middle and end samples
+     */
+    private static double[][] refinementCoefficients(
+            double[] wavelengths,
+            double[][] weights,
+            int start, int middle, int end
+    ) {
+        final double[][] coefficients = new double[3][3];
+        for (int i = start + 1; i < end; i++) {
+            final double t = (wavelengths[i] - wavelengths[start]) / (wavelengths[end] - wavelengths[start]);
+            double fineStart = 0.0;
+            double fineMiddle;
+            double fineEnd = 0.0;
+            if (i <= middle) {
+                final double s = (wavelengths[i] - wavelengths[start]) / (wavelengths[middle] - wavelengths[start]);
+                fineStart = 1.0 - s;
+                fineMiddle = s;
+            } else {
+                final double s = (wavelengths[i] - wavelengths[middle]) / (wavelengths[end] - wavelengths[middle]);
+                fineMiddle = 1.0 - s;
+                fineEnd = s;
+            }
+
+            for (int channel = 0; channel < 3; channel++) {
+                final double weight = weights[channel][i];
+                coefficients[channel][0] += (fineStart - (1.0 - t)) * weight;
+                coefficients[channel][1] += fineMiddle * weight;
+                coefficients[channel][2] += (fineEnd - t) * weight;
+            }
+        }
+        return coefficients;
+    }
+
+    /**
+     * Largest colour change over the pixels between colors and colors without
+     * the refinement
+     */
+    private static double maxDeltaE(
+            XYZAccumulator colors,
+            double[][] coefficients,
+            double[] start, double[] middle, double[] end
+    ) {
+        double max = 0.0;
+        for (int p = 0; p < start.length; p++) {
+            final double x = colors.x[p];
+            final double y = colors.y[p];
+            final double z = colors.z[p];
+            max = Math.max(max, CIE.deltaE(
+                    x, y, z,
+                    x - change(coefficients[0], start[p], middle[p], end[p]),
+                    y - change(coefficients[1], start[p], middle[p], end[p]),
+                    z - change(coefficients[2], start[p], middle[p], end[p])
+            ));
+        }
+        return max;
+    }
+
+    private static void addDifference(
+            double[][] difference,
+            double[][] coefficients,
+            double[] start, double[] middle, double[] end
+    ) {
+        for (int channel = 0; channel < 3; channel++)
+            for (int p = 0; p < start.length; p++)
+                difference[channel][p] += change(coefficients[channel], start[p], middle[p], end[p]);
+    }
+
+    private static double change(double[] coefficients, double start, double middle, double end) {
+        return coefficients[0] * start + coefficients[1] * middle + coefficients[2] * end;
+    }
+}
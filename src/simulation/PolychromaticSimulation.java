@@ -0,0 +1,188 @@
+package simulation;
+
+import color.PolychromaticLight;
+import fft.AngularSpectrumPropagator;
+import fft.ComplexBuffer;
+import fft.ObservationWindow;
+import fft.PropagationWorkspace;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the monochromatic propagations of a polychromatic light source on an
+ * executor.
+ * <p>
+ * At most maxInFlight wavelengths are submitted but not yet consumed, which bounds
+ * the number of full-resolution fields alive at once. Frames are handed to the
+ * consumer in wavelength order on the calling thread, so anything the consumer
+ * accumulates comes out the same as with a sequential sweep.
+ * <p>
+ * Each wavelength in flight works in a {@link PropagationWorkspace} and an
+ * intensity plane taken from a pool, and both go back to the pool once its frame
+ * has been consumed; after the first maxInFlight wavelengths a sweep allocates
+ * nothing of the grid's size. Frames therefore only hold their intensities until
+ * the consumer returns, and consumers that keep them must copy them. The pool
+ * is kept from one {@link #run} to the next, so runs must not overlap.
+ * <p>
+ * Given an {@link ObservationWindow}, frames cover only that window, at its
+ * resolution (see {@link AngularSpectrumPropagator#propagateWindow}).
+ */
+public final class PolychromaticSimulation {
+    @FunctionalInterface
+    public interface FrameConsumer {
+        /**
+         * @param wavelength  wavelength of the frame
+         * @param intensities |U| of the observed field, row-major; reused for
+         *                    later frames once this returns
+         */
+        void accept(double wavelength, double[] intensities);
+
+        /**
+         * Consumer that passes each frame to this one, then to next
+         */
+        default FrameConsumer andThen(FrameConsumer next) {
+            return (wavelength, intensities) -> {
+                accept(wavelength, intensities);
+                next.accept(wavelength, intensities);
+            };
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(int finished, int total);
+    }
+
+    private final AngularSpectrumPropagator propagator;
+    private final double distance;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final ObservationWindow window;
+    /**
+     * Slots of consumed wavelengths, ready for the next ones; only touched by
+     * the thread in {@link #run}
+     */
+    private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+
+    /**
+     * Working memory of one wavelength in flight
+     *
+     * @param workspace   null when propagating onto a window
+     * @param intensities receives the frame
+     */
+    private value record Slot(PropagationWorkspace workspace, double[] intensities) {
+    }
+
+    /**
+     * @param propagator  propagator for the mask being lit
+     * @param distance    observation distance from incident
+     * @param executor    runs the propagations
+     * @param maxInFlight how many wavelengths may be computed ahead of the consumer
+     */
+    public PolychromaticSimulation(
+            AngularSpectrumPropagator propagator,
+            double distance,
+            Executor executor,
+            int maxInFlight
+    ) {
+        this(propagator, distance, executor, maxInFlight, null);
+    }
+
+    /**
+     * @param propagator  propagator for the mask being lit
+     * @param distance    observation distance from incident
+     * @param executor    runs the propagations
+     * @param maxInFlight how many wavelengths may be computed ahead of the consumer
+     * @param window      part of the observation plane frames cover, or null for the whole grid
+     */
+    public PolychromaticSimulation(
+            AngularSpectrumPropagator propagator,
+            double distance,
+            Executor executor,
+            int maxInFlight,
+            ObservationWindow window
+    ) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be positive");
+
+        this.propagator = propagator;
+        this.distance = distance;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.window = window;
+    }
+
+    public void run(
+            List<PolychromaticLight.WavelengthWithIntensity> light,
+            FrameConsumer frames,
+            ProgressListener progress
+    ) {
+        final int total = light.size();
+        final ArrayDeque<CompletableFuture<Slot>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+        int finished = 0;
+
+        try {
+            while (finished < total) {
+                while (submitted < total && inFlight.size() < maxInFlight)
+                    inFlight.addLast(submit(light.get(submitted++)));
+
+                final Slot slot = inFlight.removeFirst().join();
+                frames.accept(light.get(finished).wavelength(), slot.intensities());
+                slots.addLast(slot);
+                finished++;
+                progress.progress(finished, total);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        } finally {
+            /*
+            empty unless a propagation, frames or progress threw; the slots still
+            in flight are dropped rather than reused, as their propagations may
+            still be running
+             */
+            for (CompletableFuture<Slot> future : inFlight)
+                future.cancel(false);
+        }
+    }
+
+    private CompletableFuture<Slot> submit(PolychromaticLight.WavelengthWithIntensity wavelengthWithIntensity) {
+        final Slot slot = slots.isEmpty() ? newSlot() : slots.removeFirst();
+        return CompletableFuture.supplyAsync(() -> {
+            if (window == null) {
+                // the modulus is folded into the last inverse pass, see AngularSpectrumPropagator#propagateModulus
+                propagator.propagateModulus(
+                        wavelengthWithIntensity.wavelength(),
+                        distance,
+                        wavelengthWithIntensity.intensity(),
+                        slot.workspace(),
+                        slot.intensities()
+                );
+                return slot;
+            }
+
+            final ComplexBuffer observation = propagator.propagateWindow(
+                    wavelengthWithIntensity.wavelength(),
+                    distance,
+                    wavelengthWithIntensity.intensity(),
+                    window
+            );
+            final Metrics.Span span = Metrics.start(Stage.MODULUS);
+            observation.modulus(slot.intensities());
+            Metrics.stop(span);
+            return slot;
+        }, executor);
+    }
+
+    private Slot newSlot() {
+        if (window != null) return new Slot(null, new double[window.numPoints()]);
+        return new Slot(propagator.newWorkspace(), new double[propagator.geometry.numPoints()]);
+    }
+}
@@ -0,0 +1,247 @@
+package simulation;
+
+import color.PolychromaticLight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Spectral cube written by {@link SpectralCubeWriter}, mapped read-only.
+ * <p>
+ * Uncompressed planes are decoded straight out of the mapping, so replaying a
+ * cube is one sequential pass over the file with no read buffers in between;
+ * compressed planes are copied out and inflated first.
+ * Changing the reflectance or tone mapping only needs a fresh
+ * {@link XYZAccumulator}; for a different illuminant, see
+ * {@link #replay(List, PolychromaticSimulation.FrameConsumer)}.
+ * <p>
+ * The mapping is released by {@link #close()}. Planes may be read from several
+ * threads until then.
+ */
+public final class SpectralCube implements Closeable {
+    private static final ValueLayout.OfInt INT =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(SpectralCubeFormat.ORDER);
+    private static final ValueLayout.OfLong LONG =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(SpectralCubeFormat.ORDER);
+    private static final ValueLayout.OfDouble DOUBLE =
+            ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(SpectralCubeFormat.ORDER);
+    private static final ValueLayout.OfFloat FLOAT =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(SpectralCubeFormat.ORDER);
+    private static final ValueLayout.OfShort SHORT =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(SpectralCubeFormat.ORDER);
+
+    /**
+     * How each intensity is stored
+     */
+    public enum Encoding {
+        /**
+         * IEEE binary32
+         */
+        FLOAT32(4),
+        /**
+         * IEEE binary16: about three significant digits, and anything above
+         * 65504 becomes infinite
+         */
+        FLOAT16(2);
+
+        public final int bytes;
+
+        Encoding(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * How each encoded plane is stored
+     */
+    public enum Compression {
+        NONE,
+        /**
+         * bytes regrouped by significance (all first bytes, then all second
+         * bytes, ...) and deflated. Neighbouring intensities share their high
+         * bytes, which deflate compresses much better once they are adjacent.
+         */
+        SHUFFLE_DEFLATE
+    }
+
+    private final Arena arena;
+    private final MemorySegment file;
+    public final int width;
+    public final int height;
+    public final Encoding encoding;
+    public final Compression compression;
+    private final int planes;
+
+    private SpectralCube(Arena arena, MemorySegment file) throws IOException {
+        this.arena = arena;
+        this.file = file;
+
+        if (file.byteSize() < SpectralCubeFormat.HEADER_BYTES)
+            throw new IOException("Not a spectral cube");
+        final byte[] magic = file.asSlice(0, SpectralCubeFormat.MAGIC.length).toArray(ValueLayout.JAVA_BYTE);
+        if (!Arrays.equals(magic, SpectralCubeFormat.MAGIC))
+            throw new IOException("Not a spectral cube");
+        final int version = file.get(INT, 8);
+        if (version != SpectralCubeFormat.VERSION)
+            throw new IOException("Unsupported spectral cube version " + version);
+
+        width = file.get(INT, 12);
+        height = file.get(INT, 16);
+        planes = file.get(INT, 20);
+        encoding = Encoding.values()[file.get(ValueLayout.JAVA_BYTE, 24)];
+        compression = Compression.values()[file.get(ValueLayout.JAVA_BYTE, 25)];
+        if (file.byteSize() < SpectralCubeFormat.dataOffset(planes))
+            throw new IOException("Spectral cube table is truncated");
+    }
+
+    public static SpectralCube open(Path path) throws IOException {
+        final Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SpectralCube(arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public int numPoints() {
+        return width * height;
+    }
+
+    public int planes() {
+        return planes;
+    }
+
+    public double wavelength(int plane) {
+        return file.get(DOUBLE, SpectralCubeFormat.tableOffset(plane));
+    }
+
+    /**
+     * Intensity of the source the plane was propagated with
+     */
+    public double sourceIntensity(int plane) {
+        return file.get(DOUBLE, SpectralCubeFormat.tableOffset(plane) + Double.BYTES);
+    }
+
+    /**
+     * false for planes a sweep did not get to
+     */
+    public boolean isWritten(int plane) {
+        return planeOffset(plane) != 0L;
+    }
+
+    private long planeOffset(int plane) {
+        return file.get(LONG, SpectralCubeFormat.tableOffset(plane) + 2 * Double.BYTES);
+    }
+
+    private long planeLength(int plane) {
+        return file.get(LONG, SpectralCubeFormat.tableOffset(plane) + 2 * Double.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Decodes plane into intensities, row-major width x height
+     */
+    public void readPlane(int plane, double[] intensities) {
+        if (plane < 0 || plane >= planes) throw new IndexOutOfBoundsException(plane);
+        if (intensities.length != numPoints()) throw new IllegalArgumentException();
+        if (!isWritten(plane)) throw new IllegalStateException("Plane " + plane + " was not written");
+
+        final MemorySegment stored = file.asSlice(planeOffset(plane), planeLength(plane));
+        final MemorySegment encoded = compression == Compression.NONE ? stored : inflate(stored);
+
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (int i = 0; i < intensities.length; i++)
+                    intensities[i] = encoded.getAtIndex(FLOAT, i);
+            }
+            case FLOAT16 -> {
+                for (int i = 0; i < intensities.length; i++)
+                    intensities[i] = Float.float16ToFloat(encoded.getAtIndex(SHORT, i));
+            }
+        }
+    }
+
+    private MemorySegment inflate(MemorySegment stored) {
+        final int bytes = numPoints() * encoding.bytes;
+        final byte[] shuffled = new byte[bytes];
+        final Inflater inflater = new Inflater();
+        try {
+            // Inflater cannot read a buffer of a shared mapping, the compressed bytes are copied
+            inflater.setInput(stored.toArray(ValueLayout.JAVA_BYTE));
+            int count = 0;
+            while (count < bytes && !inflater.finished()) {
+                final int inflated = inflater.inflate(shuffled, count, bytes - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                count += inflated;
+            }
+            if (count != bytes) throw new IllegalStateException("Spectral cube plane is truncated");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Spectral cube plane is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        final byte[] encoded = new byte[bytes];
+        SpectralCubeFormat.unshuffle(shuffled, encoded, numPoints(), encoding.bytes);
+        return MemorySegment.ofArray(encoded);
+    }
+
+    /**
+     * Hands every written plane to frames, in order
+     */
+    public void replay(PolychromaticSimulation.FrameConsumer frames) {
+        final double[] intensities = new double[numPoints()];
+        for (int plane = 0; plane < planes; plane++) {
+            if (!isWritten(plane)) continue;
+
+            readPlane(plane, intensities);
+            frames.accept(wavelength(plane), intensities);
+        }
+    }
+
+    /**
+     * Hands every written plane to frames as if it had been propagated with light
+     * instead. The observed field is linear in the incident one, so each plane is
+     * scaled by the new source intensity over the recorded one. light must list
+     * the same wavelengths as the cube, in the same order.
+     */
+    public void replay(
+            List<PolychromaticLight.WavelengthWithIntensity> light,
+            PolychromaticSimulation.FrameConsumer frames
+    ) {
+        if (light.size() != planes) throw new IllegalArgumentException("Light does not match the cube's wavelengths");
+
+        final double[] intensities = new double[numPoints()];
+        for (int plane = 0; plane < planes; plane++) {
+            if (light.get(plane).wavelength() != wavelength(plane))
+                throw new IllegalArgumentException("Light does not match the cube's wavelengths");
+            if (!isWritten(plane)) continue;
+
+            final double recorded = sourceIntensity(plane);
+            final double intensity = light.get(plane).intensity();
+            if (recorded == 0.0 && intensity != 0.0)
+                throw new IllegalArgumentException("Plane " + plane + " was propagated with no light");
+
+            readPlane(plane, intensities);
+            final double scale = recorded == 0.0 ? 0.0 : intensity / recorded;
+            for (int i = 0; i < intensities.length; i++)
+                intensities[i] *= scale;
+            frames.accept(wavelength(plane), intensities);
+        }
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
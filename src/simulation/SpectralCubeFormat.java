@@ -0,0 +1,60 @@
+package simulation;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of a spectral cube file, shared by {@link SpectralCubeWriter} and
+ * {@link SpectralCube}. All values are little-endian.
+ * <pre>
+ * header, HEADER_BYTES:
+ *   8 bytes  magic "SPECCUBE"
+ *   int      version
+ *   int      width, height, planes
+ *   byte     encoding, ordinal of {@link SpectralCube.Encoding}
+ *   byte     compression, ordinal of {@link SpectralCube.Compression}
+ *   padding up to HEADER_BYTES
+ * table, planes x ENTRY_BYTES:
+ *   double   wavelength
+ *   double   intensity of the source at that wavelength
+ *   long     offset of the plane from the start of the file, 0 if not written yet
+ *   long     stored length of the plane in bytes
+ * planes, in table order:
+ *   width x height row-major intensities, encoded and possibly compressed
+ * </pre>
+ */
+final class SpectralCubeFormat {
+    static final byte[] MAGIC = {'S', 'P', 'E', 'C', 'C', 'U', 'B', 'E'};
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int ENTRY_BYTES = 32;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private SpectralCubeFormat() {
+    }
+
+    static long tableOffset(int plane) {
+        return HEADER_BYTES + (long) plane * ENTRY_BYTES;
+    }
+
+    static long dataOffset(int planes) {
+        return tableOffset(planes);
+    }
+
+    /**
+     * Regroups values of width bytes each so byte b of value i moves to b * count + i
+     */
+    static void shuffle(byte[] source, byte[] target, int count, int width) {
+        for (int i = 0; i < count; i++)
+            for (int b = 0; b < width; b++)
+                target[b * count + i] = source[i * width + b];
+    }
+
+    /**
+     * Inverse of {@link #shuffle}
+     */
+    static void unshuffle(byte[] source, byte[] target, int count, int width) {
+        for (int b = 0; b < width; b++)
+            for (int i = 0; i < count; i++)
+                target[i * width + b] = source[b * count + i];
+    }
+}
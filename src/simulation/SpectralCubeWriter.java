@@ -0,0 +1,172 @@
+package simulation;
+
+import color.PolychromaticLight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the frames of a sweep to a spectral cube file (layout in
+ * {@link SpectralCubeFormat}) as they are delivered, so the cube can be
+ * re-rendered later by {@link SpectralCube} without propagating again.
+ * <p>
+ * The table entry of each plane is filled in once the plane is on disk, so a
+ * cube cut short by a failed sweep still reads back the planes that made it.
+ * Frames must arrive in the order of the light they were propagated for, as
+ * {@link PolychromaticSimulation} delivers them.
+ */
+public final class SpectralCubeWriter implements PolychromaticSimulation.FrameConsumer, Closeable {
+    private final FileChannel channel;
+    private final int numPoints;
+    private final List<PolychromaticLight.WavelengthWithIntensity> light;
+    private final SpectralCube.Encoding encoding;
+    private final SpectralCube.Compression compression;
+    private final Deflater deflater;
+    private final ByteBuffer encoded;
+    private final byte[] shuffled;
+    private int written = 0;
+    private long position;
+
+    /**
+     * @param file        created, or truncated if it exists
+     * @param width       plane width in points
+     * @param height      plane height in points
+     * @param light       wavelengths and source intensities the frames will come in for
+     * @param encoding    how each intensity is stored
+     * @param compression how each plane is stored
+     */
+    public SpectralCubeWriter(
+            Path file,
+            int width,
+            int height,
+            List<PolychromaticLight.WavelengthWithIntensity> light,
+            SpectralCube.Encoding encoding,
+            SpectralCube.Compression compression
+    ) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Plane size must be positive");
+
+        this.numPoints = width * height;
+        this.light = List.copyOf(light);
+        this.encoding = encoding;
+        this.compression = compression;
+        this.encoded = ByteBuffer.allocate(numPoints * encoding.bytes).order(SpectralCubeFormat.ORDER);
+        if (compression == SpectralCube.Compression.SHUFFLE_DEFLATE) {
+            // favour speed, frames are written on the thread that drives the sweep
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.shuffled = new byte[numPoints * encoding.bytes];
+        } else {
+            this.deflater = null;
+            this.shuffled = null;
+        }
+
+        this.channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+
+        final int planes = this.light.size();
+        final ByteBuffer header = ByteBuffer
+                .allocate((int) SpectralCubeFormat.dataOffset(planes))
+                .order(SpectralCubeFormat.ORDER);
+        header.put(SpectralCubeFormat.MAGIC);
+        header.putInt(SpectralCubeFormat.VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(planes);
+        header.put((byte) encoding.ordinal());
+        header.put((byte) compression.ordinal());
+        header.position(SpectralCubeFormat.HEADER_BYTES);
+        for (PolychromaticLight.WavelengthWithIntensity wavelength : this.light) {
+            header.putDouble(wavelength.wavelength());
+            header.putDouble(wavelength.intensity());
+            header.putLong(0L);
+            header.putLong(0L);
+        }
+        header.flip();
+        writeFully(header, 0);
+        position = header.capacity();
+    }
+
+    @Override
+    public void accept(double wavelength, double[] intensities) {
+        if (intensities.length != numPoints) throw new IllegalArgumentException();
+        if (written == light.size()) throw new IllegalStateException("All planes have been written");
+        if (light.get(written).wavelength() != wavelength)
+            throw new IllegalArgumentException("Expected wavelength " + light.get(written).wavelength());
+
+        encoded.clear();
+        switch (encoding) {
+            case FLOAT32 -> {
+                for (double intensity : intensities)
+                    encoded.putFloat((float) intensity);
+            }
+            case FLOAT16 -> {
+                for (double intensity : intensities)
+                    encoded.putShort(Float.floatToFloat16((float) intensity));
+            }
+        }
+        encoded.flip();
+
+        final ByteBuffer plane = compression == SpectralCube.Compression.NONE ? encoded : deflate();
+        final long offset = position;
+        final long length = plane.remaining();
+
+        try {
+            writeFully(plane, offset);
+
+            final ByteBuffer entry = ByteBuffer.allocate(2 * Long.BYTES).order(SpectralCubeFormat.ORDER);
+            entry.putLong(offset).putLong(length).flip();
+            writeFully(entry, SpectralCubeFormat.tableOffset(written) + 2 * Double.BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        position += length;
+        written++;
+    }
+
+    private ByteBuffer deflate() {
+        SpectralCubeFormat.shuffle(encoded.array(), shuffled, numPoints, encoding.bytes);
+
+        deflater.reset();
+        deflater.setInput(shuffled);
+        deflater.finish();
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(shuffled.length / 2);
+        final byte[] chunk = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            final int count = deflater.deflate(chunk);
+            output.write(chunk, 0, count);
+        }
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+    private void writeFully(ByteBuffer buffer, long offset) throws IOException {
+        long at = offset;
+        while (buffer.hasRemaining())
+            at += channel.write(buffer, at);
+    }
+
+    /**
+     * Number of planes written so far
+     */
+    public int written() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (deflater != null) deflater.end();
+        channel.close();
+    }
+}
@@ -0,0 +1,121 @@
+package simulation;
+
+import color.CIE;
+import image.PFMWriter;
+import image.PNGWriter;
+import metrics.ColorEvent;
+import metrics.Counter;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.lang.Math;
+import java.nio.file.Path;
+
+/**
+ * Folds monochromatic frames into running X, Y and Z planes as they arrive, so
+ * a frame can be dropped as soon as it has been consumed. Memory stays at three
+ * planes however many wavelengths are simulated.
+ * <p>
+ * Folding is done the same way as {@link CIE#toSRGB}, so frames accepted in
+ * wavelength order (as {@link PolychromaticSimulation} delivers them) give the
+ * same colours bit for bit.
+ */
+public final class XYZAccumulator implements PolychromaticSimulation.FrameConsumer {
+    private final CIE cie;
+    private final double reflectance;
+    public final double[] x;
+    public final double[] y;
+    public final double[] z;
+
+    public XYZAccumulator(CIE cie, int numPoints, double reflectance) {
+        this.cie = cie;
+        this.reflectance = reflectance;
+        this.x = new double[numPoints];
+        this.y = new double[numPoints];
+        this.z = new double[numPoints];
+    }
+
+    @Override
+    public void accept(double wavelength, double[] intensities) {
+        if (intensities.length != x.length) throw new IllegalArgumentException();
+
+        final ColorEvent event = new ColorEvent(intensities.length, 1);
+        event.begin();
+        final Metrics.Span span = Metrics.start(Stage.COLOR);
+        final CIE.XYZColor stimulus = cie.tristimulus(wavelength);
+        add(
+                intensities,
+                reflectance / Math.PI * stimulus.x(),
+                reflectance / Math.PI * stimulus.y(),
+                reflectance / Math.PI * stimulus.z()
+        );
+        Metrics.stop(span);
+        Metrics.count(Counter.FRAMES);
+        event.commit();
+    }
+
+    /**
+     * Adds intensities times the given weights to the planes, with no colour
+     * matching or reflectance applied; for frames standing in for a weighted sum
+     * of wavelengths, see {@link AdaptiveSpectralSampler}
+     */
+    public void add(double[] intensities, double weightX, double weightY, double weightZ) {
+        if (intensities.length != x.length) throw new IllegalArgumentException();
+
+        for (int i = 0; i < intensities.length; i++) {
+            final double intensity = intensities[i];
+            x[i] += intensity * weightX;
+            y[i] += intensity * weightY;
+            z[i] += intensity * weightZ;
+        }
+    }
+
+    public int numPoints() {
+        return x.length;
+    }
+
+    public Color color(int index) {
+        return cie.toColor(x[index], y[index], z[index]);
+    }
+
+    /**
+     * Colours of every point, packed as 0xAARRGGBB
+     */
+    public void toARGB(int[] argbOut) {
+        cie.toARGB(x, y, z, argbOut);
+    }
+
+    /**
+     * Unclamped linear sRGB of every point, interleaved r, g, b
+     */
+    public void toLinearRGB(float[] rgbOut) {
+        cie.toLinearRGB(x, y, z, rgbOut);
+    }
+
+    /**
+     * Writes the colours as a width x height PNG, or as linear unclamped RGB
+     * floats when path ends in .pfm, which skips compression entirely
+     */
+    public void write(Path path, int width, int height) throws IOException {
+        if (numPoints() != width * height) throw new IllegalArgumentException();
+
+        if (path.toString().endsWith(".pfm")) {
+            final float[] rgb = new float[3 * numPoints()];
+            toLinearRGB(rgb);
+
+            final Metrics.Span encoding = Metrics.start(Stage.PNG_ENCODE);
+            PFMWriter.write(path, rgb, width, height, 3);
+            Metrics.stop(encoding);
+            return;
+        }
+
+        final int[] argb = new int[numPoints()];
+        toARGB(argb);
+
+        final Metrics.Span encoding = Metrics.start(Stage.PNG_ENCODE);
+        PNGWriter.write(path, argb, width, height);
+        Metrics.stop(encoding);
+    }
+}
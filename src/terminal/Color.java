@@ -1,3 +1,10 @@
 package terminal;
 
-public value record Color(int r, int g, int b) {}
+public value record Color(int r, int g, int b) {
+    /**
+     * Packed 0xRRGGBB, as {@link TerminalDisplay#colorData} holds it
+     */
+    public int rgb() {
+        return (r << 16) | (g << 8) | b;
+    }
+}
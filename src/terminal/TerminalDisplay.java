@@ -1,60 +1,212 @@
 package terminal;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  * To account for terminal scaling, the x-values are rendered twice to preserve scale.
+ * <p>
+ * Colours are packed 0xRRGGBB in colorData (the top byte is ignored). Each
+ * {@link #update} diffs colorData against the frame last shown and only redraws
+ * runs of changed cells, jumping to them with cursor positioning. The frame is
+ * assembled in a reusable byte buffer and handed to the stream in one write, and
+ * frames closer together than the frame rate cap are skipped; the cells they
+ * would have changed are picked up by the next frame that is drawn.
  */
 public class TerminalDisplay {
+    private static final byte[] CELL = "██".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Unchanged cells between two changed ones that are redrawn rather than
+     * jumped over; a cursor move costs about as many bytes as two cells
+     */
+    private static final int MAX_GAP = 2;
+    private static final int DEFAULT_FRAMES_PER_SECOND = 30;
+
     public final int extentX;
     public final int extentY;
 
-    public Color[] colorData;
-    private Color[] renderedColorData;
+    public final int[] colorData;
+    private final int[] renderedColorData;
+    private final OutputStream out;
+    private final long minFrameNanos;
+
+    private byte[] frame = new byte[4096];
+    private int frameLength = 0;
+    /**
+     * foreground colour the terminal is set to, -1 if unknown
+     */
+    private int currentColor = -1;
     private boolean firstTime = true;
+    private long lastFrameNanos;
 
     public TerminalDisplay(final int extentX, final int extentY) {
+        this(extentX, extentY, System.out, DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /**
+     * @param out                receives the escape sequences
+     * @param maxFramesPerSecond cap on how often {@link #update} draws
+     */
+    public TerminalDisplay(final int extentX, final int extentY, OutputStream out, int maxFramesPerSecond) {
+        if (extentX <= 0 || extentY <= 0 || maxFramesPerSecond <= 0) throw new IllegalArgumentException();
+
         this.extentX = extentX;
         this.extentY = extentY;
+        this.out = out;
+        this.minFrameNanos = 1_000_000_000L / maxFramesPerSecond;
 
-        final int size = extentX * extentY;
+        colorData = new int[extentX * extentY];
+        renderedColorData = new int[extentX * extentY];
+    }
 
-        renderedColorData = new Color[size];
-        for (int i = 0; i < size; i++)
-            renderedColorData[i] = new Color(0, 0, 0);
+    public void set(int x, int y, int rgb) {
+        colorData[y * extentX + x] = rgb;
+    }
 
-        colorData = new Color[size];
-        for (int i = 0; i < size; i++)
-            colorData[i] = new Color(0, 0, 0);
+    public void set(int x, int y, Color color) {
+        set(x, y, color.rgb());
     }
 
-    public void update() {
-        if (firstTime) {
-            Color currentColor = null;
+    /**
+     * Fills colorData from a row-major width x height image of packed pixels,
+     * taking the nearest pixel for every cell
+     */
+    public void setFromImage(int[] argb, int width, int height) {
+        if (argb.length != width * height) throw new IllegalArgumentException();
 
+        for (int y = 0; y < extentY; y++) {
+            final int sourceY = (int) ((long) y * height / extentY);
+            for (int x = 0; x < extentX; x++)
+                colorData[y * extentX + x] = argb[sourceY * width + (int) ((long) x * width / extentX)];
+        }
+    }
+
+    /**
+     * Draws what changed since the last frame, unless that frame was drawn less
+     * than a frame interval ago
+     *
+     * @return whether a frame was drawn
+     */
+    public boolean update() {
+        final long now = System.nanoTime();
+        if (!firstTime && now - lastFrameNanos < minFrameNanos) return false;
+
+        render();
+        lastFrameNanos = now;
+        return true;
+    }
+
+    /**
+     * Draws what changed since the last frame now, e.g. to show the final state
+     * after updates were skipped
+     */
+    public void render() {
+        frameLength = 0;
+        if (firstTime) {
+            append("\033[2J");
+            for (int y = 0; y < extentY; y++)
+                appendRun(y, 0, extentX);
             firstTime = false;
-            System.out.print("\033[2J\033[H");
+        } else {
+            if (Arrays.equals(colorData, renderedColorData)) return;
 
             for (int y = 0; y < extentY; y++) {
-                for (int x = 0; x < extentX; x++) {
-                    Color pixelColor = colorData[y * extentX + x];
-                    if (pixelColor != currentColor) {
-                        final String colorStr = "\033[38;2;" +
-                                pixelColor.r() + ";" +
-                                pixelColor.g() + ";" +
-                                pixelColor.b() + "m";
-                        System.out.print(colorStr);
-
-                        currentColor = pixelColor;
+                final int row = y * extentX;
+                int x = 0;
+                while (x < extentX) {
+                    if (colorData[row + x] == renderedColorData[row + x]) {
+                        x++;
+                        continue;
                     }
 
-                    System.out.print("██");
+                    final int start = x;
+                    int end = x + 1;
+                    int gap = 0;
+                    for (x = end; x < extentX && gap <= MAX_GAP; x++) {
+                        if (colorData[row + x] != renderedColorData[row + x]) {
+                            end = x + 1;
+                            gap = 0;
+                        } else {
+                            gap++;
+                        }
+                    }
+                    appendRun(y, start, end);
+                    x = end;
                 }
+            }
+        }
+
+        // leave the cursor below the image, so other output does not land in it
+        appendCursor(extentY, 0);
+        System.arraycopy(colorData, 0, renderedColorData, 0, colorData.length);
+
+        try {
+            out.write(frame, 0, frameLength);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                System.out.println();
+    /**
+     * Draws cells [start, end) of row y
+     */
+    private void appendRun(int y, int start, int end) {
+        appendCursor(y, start);
+        for (int x = start; x < end; x++) {
+            final int color = colorData[y * extentX + x] & 0xFFFFFF;
+            if (color != currentColor) {
+                append("\033[38;2;");
+                appendDecimal(color >>> 16);
+                append(';');
+                appendDecimal((color >>> 8) & 0xFF);
+                append(';');
+                appendDecimal(color & 0xFF);
+                append('m');
+                currentColor = color;
             }
+            append(CELL);
         }
+    }
+
+    /**
+     * Moves the cursor to cell x of row y, both from 0
+     */
+    private void appendCursor(int y, int x) {
+        append("\033[");
+        appendDecimal(y + 1);
+        append(';');
+        appendDecimal(2 * x + 1);
+        append('H');
+    }
+
+    private void appendDecimal(int value) {
+        if (value >= 10) appendDecimal(value / 10);
+        append((char) ('0' + value % 10));
+    }
+
+    private void append(String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++)
+            frame[frameLength++] = (byte) ascii.charAt(i);
+    }
+
+    private void append(char ascii) {
+        ensureCapacity(1);
+        frame[frameLength++] = (byte) ascii;
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, frame, frameLength, bytes.length);
+        frameLength += bytes.length;
+    }
 
-        if (Arrays.equals(colorData, renderedColorData)) return;
+    private void ensureCapacity(int extra) {
+        if (frameLength + extra > frame.length)
+            frame = Arrays.copyOf(frame, Math.max(2 * frame.length, frameLength + extra));
     }
 }